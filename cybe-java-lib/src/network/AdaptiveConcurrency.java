@@ -0,0 +1,118 @@
+package network;
+
+import org.apache.http.conn.routing.HttpRoute;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import utils.SuperSimpleLogger;
+
+/**
+ * AIMD (additive increase, multiplicative decrease) controller of the number of connections to the platform.
+ * <ul>
+ * <li>each time a "window" of fast responses is observed (as many as the current limit), the limit grows by
+ * one;</li>
+ * <li>a slow response, a 429/503 status or a connection error halves the limit. Successive decreases are ignored
+ * during a short cooldown, so that a burst of errors from the same window only counts once.</li>
+ * </ul>
+ * The limit is applied directly to the connection manager, i.e. the threads above the limit will wait for a
+ * connection to be released.
+ */
+public class AdaptiveConcurrency{
+
+    private static final long DECREASE_COOLDOWN_MS = 1000;
+
+    private final PoolingHttpClientConnectionManager connectionManager;
+    private final HttpRoute route;
+    private final int min, max;
+    private final long latencyThresholdMs;
+
+    private SuperSimpleLogger logger = SuperSimpleLogger.silentInstance();
+
+    private int limit;
+    private int successes;
+    private long lastDecrease;
+
+
+    /**
+     * Create a controller. The initial limit is the maximum, the platform being considered healthy until proven
+     * otherwise.
+     *
+     * @param connectionManager the connection manager to control
+     * @param route             the route to the platform
+     * @param config            the config (min, max and latency threshold)
+     */
+    public AdaptiveConcurrency( PoolingHttpClientConnectionManager connectionManager, HttpRoute route,
+                                ConnectorConfig config ){
+        this.connectionManager = connectionManager;
+        this.route = route;
+        this.max = config.getMaxToTarget();
+        this.min = Math.min( config.getAdaptiveMin(), max );
+        this.latencyThresholdMs = config.getLatencyThresholdMs();
+        this.limit = max;
+        apply();
+    }
+
+
+    public void setLogger( SuperSimpleLogger logger ){
+        this.logger = logger;
+    }
+
+
+    /** @return the current number of connections allowed to the platform */
+    public synchronized int getLimit(){
+        return limit;
+    }
+
+    //----------------------------------------------------
+
+
+    /**
+     * Record a response.
+     *
+     * @param latencyMs the time it took to get the response headers, in milliseconds
+     */
+    public synchronized void onSuccess( long latencyMs ){
+        if( latencyMs > latencyThresholdMs ){
+            decrease( "slow response (" + latencyMs + " ms)" );
+            return;
+        }
+
+        if( ++successes >= limit ){
+            successes = 0;
+            if( limit < max ){
+                limit++;
+                apply();
+                logger.debug.printf( "adaptive: limit raised to %d%n", limit );
+            }
+        }
+    }//end onSuccess
+
+
+    /** Record a 429 (too many requests) or 503 (service unavailable) response. */
+    public synchronized void onOverload( int status ){
+        decrease( "status " + status );
+    }
+
+
+    /** Record a connection error (timeout, reset...). */
+    public synchronized void onError( Exception e ){
+        decrease( e.getClass().getSimpleName() );
+    }
+
+    //----------------------------------------------------
+
+
+    private void decrease( String reason ){
+        successes = 0;
+        long now = System.currentTimeMillis();
+        if( now - lastDecrease < DECREASE_COOLDOWN_MS || limit == min ) return;
+
+        lastDecrease = now;
+        limit = Math.max( min, limit / 2 );
+        apply();
+        logger.debug.printf( "adaptive: limit lowered to %d (%s)%n", limit, reason );
+    }//end decrease
+
+
+    private void apply(){
+        connectionManager.setMaxPerRoute( route, limit );
+    }
+}//end class
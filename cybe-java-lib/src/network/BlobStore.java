@@ -0,0 +1,238 @@
+package network;
+
+import com.google.gson.annotations.SerializedName;
+import gson.DoNotSerialize;
+import gson.GsonContainable;
+import gson.GsonUtils;
+import org.apache.commons.codec.binary.Hex;
+import org.apache.http.HttpHeaders;
+import utils.CybeUtils;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.*;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Predicate;
+
+/**
+ * A content-addressed store of the resources downloaded, shared by all the course directories: the same slides are
+ * often published in several courses.
+ * <p/>
+ * Each resource is kept once in the store ({@code blobs/ab/abcdef...}, named after the SHA-256 of its content), and
+ * the files of the course directories are hard links to it. A resource downloaded again is replaced by a link to the
+ * blob with the same content. The store also remembers the validators of the responses which led to each blob (the
+ * ETag, or the url, Last-Modified and length): when a response matches them, the content is linked without being
+ * downloaded.
+ * <p/>
+ * The hard links need the store and the course directories to be on the same file system. Otherwise (or if the file
+ * system does not support them), the files are simply kept as they are. Note that the linked files share their
+ * content: modifying one of them modifies the others. The store can be safely used from multiple threads.
+ */
+public class BlobStore implements GsonContainable{
+
+    public static final String DEFAULT_DIR = //
+            System.getProperty( "user.home" ) + File.separator + ".cybe-blobs";
+    private static final String INDEX_FILENAME = "index.json";
+    private static final String BLOBS_DIRNAME = "blobs";
+
+    // validators key => hash of the blob
+    @SerializedName( "index" )
+    private Map<String, String> index = new ConcurrentHashMap<>();
+
+    // -- not serialized
+    @DoNotSerialize
+    private File dir;
+
+    @DoNotSerialize
+    private volatile boolean modified;
+
+    //----------------------------------------------------
+
+
+    public BlobStore(){
+    }
+
+
+    /**
+     * Load the store in the given directory, creating it if needed.
+     *
+     * @param dir the directory of the store
+     * @return the store
+     */
+    public static BlobStore loadInstance( String dir ){
+        File indexFile = new File( dir, INDEX_FILENAME );
+        BlobStore store = null;
+        if( indexFile.exists() ){
+            store = ( BlobStore ) GsonUtils.getJsonFromFile( indexFile.getPath(), new BlobStore() );
+        }
+        if( store == null ) store = new BlobStore();
+        // gson does not know about concurrent maps
+        store.index = new ConcurrentHashMap<>( store.index );
+        store.dir = new File( dir );
+        return store;
+    }//end loadInstance
+
+
+    /**
+     * Find the blob matching the validators of a response.
+     *
+     * @param in the response
+     * @return the hash of the blob, or null if unknown
+     */
+    public String find( ResourceStream in ){
+        if( in.isPartial() ) return null;
+        for( String key : keysOf( in ) ){
+            String hash = index.get( key );
+            if( hash == null ) continue;
+
+            File blob = getBlob( hash );
+            long length = in.getTotalLength();
+            if( blob.isFile() && ( length < 0 || blob.length() == length ) ) return hash;
+            modified |= index.remove( key ) != null; // the blob was deleted
+        }//end for
+        return null;
+    }//end find
+
+
+    /**
+     * Make the target a link to a blob, replacing it if it exists.
+     *
+     * @param hash   the hash of the blob
+     * @param target the file
+     * @return false if the link could not be created (e.g. other file system). The target is then left untouched
+     */
+    public boolean link( String hash, File target ){
+        Path blob = getBlob( hash ).toPath();
+        Path tmp = target.toPath().resolveSibling( "." + target.getName() + ".link" );
+        try{
+            Files.deleteIfExists( tmp );
+            Files.createLink( tmp, blob );
+            try{
+                Files.move( tmp, target.toPath(), StandardCopyOption.ATOMIC_MOVE,
+                        StandardCopyOption.REPLACE_EXISTING );
+            }catch( AtomicMoveNotSupportedException e ){
+                Files.move( tmp, target.toPath(), StandardCopyOption.REPLACE_EXISTING );
+            }
+            return true;
+        }catch( IOException | UnsupportedOperationException e ){
+            try{
+                Files.deleteIfExists( tmp );
+            }catch( IOException ignored ){
+            }
+            return false;
+        }
+    }//end link
+
+
+    /**
+     * Add a downloaded resource to the store: if a blob has the same content, the file is replaced by a link to it.
+     * Otherwise, the file becomes the blob (a link is added in the store). In both cases, the validators of the
+     * response are remembered.
+     *
+     * @param file     the file, as saved from the response
+     * @param in       the response
+     * @param linkable tells if the file can be replaced by a link to the given (existing) blob
+     * @return the hash of the content
+     * @throws IOException if the file could not be read
+     */
+    public String add( File file, ResourceStream in, Predicate<File> linkable ) throws IOException{
+        String hash = hash( file );
+        File blob = getBlob( hash );
+
+        if( !blob.exists() ){
+            try{
+                Files.createDirectories( blob.getParentFile().toPath() );
+                Files.createLink( blob.toPath(), file.toPath() );
+            }catch( FileAlreadyExistsException e ){
+                // added by another thread in the meantime: link to it below
+            }catch( IOException | UnsupportedOperationException e ){
+                return hash; // no link possible: nothing is stored
+            }
+        }
+
+        if( !Files.isSameFile( blob.toPath(), file.toPath() ) && linkable.test( blob ) ) link( hash, file );
+        for( String key : keysOf( in ) ){
+            modified |= !hash.equals( index.put( key, hash ) );
+        }//end for
+        return hash;
+    }//end add
+
+
+    /**
+     * @param hash the hash of a content
+     * @return the blob of the content (which may not exist)
+     */
+    public File getBlob( String hash ){
+        return new File( new File( new File( dir, BLOBS_DIRNAME ), hash.substring( 0, 2 ) ), hash );
+    }
+
+
+    /** @return true if a modification was made since the last save, false otherwise */
+    public boolean isModified(){
+        return modified;
+    }
+
+
+    /**
+     * Save the index of the store (if it was modified).
+     *
+     * @return true upon success
+     */
+    public boolean save(){
+        boolean ret = false;
+        if( modified && dir != null ){
+            dir.mkdirs();
+            ret = CybeUtils.writeJsonFile( new File( dir, INDEX_FILENAME ).getPath(), this );
+            modified = !ret;
+        }
+        return ret;
+    }//end save
+
+    //----------------------------------------------------
+
+
+    /*
+     * the keys of the validators of a response. A strong ETag identifies a content whatever the url (on moodle, it is
+     * the hash of the content); a weak one, or the date and length, only for the same url
+     */
+    private static List<String> keysOf( ResourceStream in ){
+        List<String> keys = new ArrayList<>();
+        String url = CybeUtils.normaliseUrl( in.getUrl() );
+        String etag = in.getHeader( HttpHeaders.ETAG );
+        String lastModified = in.getHeader( HttpHeaders.LAST_MODIFIED );
+
+        if( etag != null ){
+            keys.add( etag.startsWith( "W/" ) ? "etag " + url + " " + etag : "etag " + etag );
+        }
+        if( lastModified != null && in.getTotalLength() >= 0 ){
+            keys.add( "url " + url + " " + lastModified + " " + in.getTotalLength() );
+        }
+        return keys;
+    }//end keysOf
+
+
+    /* the sha-256 of a file, in hexadecimal */
+    private static String hash( File file ) throws IOException{
+        MessageDigest md;
+        try{
+            md = MessageDigest.getInstance( "SHA-256" );
+        }catch( NoSuchAlgorithmException e ){
+            throw new IllegalStateException( e ); // every jvm has sha-256
+        }
+
+        byte[] buffer = new byte[ 64 * 1024 ];
+        try( InputStream in = new DigestInputStream( Files.newInputStream( file.toPath() ), md ) ){
+            while( in.read( buffer ) >= 0 ){
+                // the digest is updated by the stream
+            }
+        }
+        return Hex.encodeHexString( md.digest() );
+    }//end hash
+}//end class
@@ -0,0 +1,260 @@
+package network;
+
+import java.io.File;
+
+/**
+ * Settings of a {@link CybeConnector}, i.e. the size of its connection pool, the adaptive concurrency mode, the
+ * page cache and the segmented downloads.
+ * <p/>
+ * All the setters return the config itself, so they can be chained:
+ * <pre>
+ * ConnectorConfig config = new ConnectorConfig()
+ *          .setMaxTotal( 100 )
+ *          .setMaxToTarget( 30 )
+ *          .setAdaptive( true );
+ * CybeConnector connector = new CybeConnector( platformLinks, config );
+ * </pre>
+ */
+public class ConnectorConfig{
+
+    /* maximum number of connections in the pool */
+    public static final int DEFAULT_MAX_TOTAL = 50;
+    /* maximum number of connections per given route */
+    public static final int DEFAULT_MAX_PER_ROUTE = 20;
+    /* maximum number of connections for the platform */
+    public static final int DEFAULT_MAX_TO_TARGET = 20;
+
+    /* the adaptive limit never goes below this number of connections */
+    public static final int DEFAULT_ADAPTIVE_MIN = 2;
+    /* above this latency (time to get the response headers), the platform is considered overloaded */
+    public static final long DEFAULT_LATENCY_THRESHOLD_MS = 3000;
+
+    /* page cache: maximum number of entries */
+    public static final int DEFAULT_CACHE_MAX_ENTRIES = 1000;
+    /* page cache: maximum size on disk */
+    public static final long DEFAULT_CACHE_MAX_BYTES = 50 * 1024 * 1024;
+    /* page cache: maximum size of one response */
+    public static final long DEFAULT_CACHE_MAX_OBJECT_SIZE = 1024 * 1024;
+    /* page cache: how long a page is considered fresh */
+    public static final long DEFAULT_CACHE_TTL_SEC = 600;
+
+    /* segmented downloads: number of parallel ranges for one resource */
+    public static final int DEFAULT_SEGMENTS = 4;
+    /* segmented downloads: only for the resources bigger than this */
+    public static final long DEFAULT_SEGMENT_THRESHOLD = 32 * 1024 * 1024;
+
+    private int maxTotal = DEFAULT_MAX_TOTAL;
+    private int maxPerRoute = DEFAULT_MAX_PER_ROUTE;
+    private int maxToTarget = DEFAULT_MAX_TO_TARGET;
+
+    private boolean adaptive = false;
+    private int adaptiveMin = DEFAULT_ADAPTIVE_MIN;
+    private long latencyThresholdMs = DEFAULT_LATENCY_THRESHOLD_MS;
+
+    private File cacheDir = null;
+    private int cacheMaxEntries = DEFAULT_CACHE_MAX_ENTRIES;
+    private long cacheMaxBytes = DEFAULT_CACHE_MAX_BYTES;
+    private long cacheMaxObjectSize = DEFAULT_CACHE_MAX_OBJECT_SIZE;
+    private long cacheTtlSec = DEFAULT_CACHE_TTL_SEC;
+
+    private int segments = DEFAULT_SEGMENTS;
+    private long segmentThreshold = DEFAULT_SEGMENT_THRESHOLD;
+
+
+    /** @return a config with the default values */
+    public static ConnectorConfig defaultConfig(){
+        return new ConnectorConfig();
+    }
+
+    /* *****************************************************************
+     * getters/setters
+     * ****************************************************************/
+
+
+    public int getMaxTotal(){
+        return maxTotal;
+    }
+
+
+    /** @param maxTotal the maximum number of connections in the pool */
+    public ConnectorConfig setMaxTotal( int maxTotal ){
+        this.maxTotal = requirePositive( maxTotal, "maxTotal" );
+        return this;
+    }
+
+
+    public int getMaxPerRoute(){
+        return maxPerRoute;
+    }
+
+
+    /** @param maxPerRoute the maximum number of connections to a route other than the platform */
+    public ConnectorConfig setMaxPerRoute( int maxPerRoute ){
+        this.maxPerRoute = requirePositive( maxPerRoute, "maxPerRoute" );
+        return this;
+    }
+
+
+    public int getMaxToTarget(){
+        return maxToTarget;
+    }
+
+
+    /**
+     * @param maxToTarget the maximum number of connections to the platform. In adaptive mode, this is the upper
+     *                    bound of the limit.
+     */
+    public ConnectorConfig setMaxToTarget( int maxToTarget ){
+        this.maxToTarget = requirePositive( maxToTarget, "maxToTarget" );
+        return this;
+    }
+
+
+    public boolean isAdaptive(){
+        return adaptive;
+    }
+
+
+    /**
+     * @param adaptive if true, the number of connections to the platform will grow and shrink depending on the
+     *                 latency and the errors observed (AIMD). See {@link AdaptiveConcurrency}.
+     */
+    public ConnectorConfig setAdaptive( boolean adaptive ){
+        this.adaptive = adaptive;
+        return this;
+    }
+
+
+    public int getAdaptiveMin(){
+        return adaptiveMin;
+    }
+
+
+    /** @param adaptiveMin the lower bound of the number of connections to the platform in adaptive mode */
+    public ConnectorConfig setAdaptiveMin( int adaptiveMin ){
+        this.adaptiveMin = requirePositive( adaptiveMin, "adaptiveMin" );
+        return this;
+    }
+
+
+    public long getLatencyThresholdMs(){
+        return latencyThresholdMs;
+    }
+
+
+    /**
+     * @param latencyThresholdMs in adaptive mode, a response slower than this is handled as a sign of overload
+     *                           (milliseconds)
+     */
+    public ConnectorConfig setLatencyThresholdMs( long latencyThresholdMs ){
+        this.latencyThresholdMs = requirePositive( latencyThresholdMs, "latencyThresholdMs" );
+        return this;
+    }
+
+
+    public File getCacheDir(){
+        return cacheDir;
+    }
+
+
+    /**
+     * Enable the on-disk cache of the platform pages (course pages and resource/url viewers), so that the same viewer
+     * is not downloaded twice during {@link #getCacheTtlSec()} seconds, even across runs. The course pages are always
+     * revalidated: a resource added to the course is seen by the next pull.
+     *
+     * @param cacheDir the directory of the cache, or null to disable it (the default)
+     */
+    public ConnectorConfig setCacheDir( File cacheDir ){
+        this.cacheDir = cacheDir;
+        return this;
+    }
+
+
+    public int getCacheMaxEntries(){
+        return cacheMaxEntries;
+    }
+
+
+    /** @param cacheMaxEntries the maximum number of responses in the cache (least recently used evicted first) */
+    public ConnectorConfig setCacheMaxEntries( int cacheMaxEntries ){
+        this.cacheMaxEntries = requirePositive( cacheMaxEntries, "cacheMaxEntries" );
+        return this;
+    }
+
+
+    public long getCacheMaxBytes(){
+        return cacheMaxBytes;
+    }
+
+
+    /** @param cacheMaxBytes the maximum size of the cache on disk, in bytes */
+    public ConnectorConfig setCacheMaxBytes( long cacheMaxBytes ){
+        this.cacheMaxBytes = requirePositive( cacheMaxBytes, "cacheMaxBytes" );
+        return this;
+    }
+
+
+    public long getCacheMaxObjectSize(){
+        return cacheMaxObjectSize;
+    }
+
+
+    /** @param cacheMaxObjectSize the maximum size of a response to be cached, in bytes */
+    public ConnectorConfig setCacheMaxObjectSize( long cacheMaxObjectSize ){
+        this.cacheMaxObjectSize = requirePositive( cacheMaxObjectSize, "cacheMaxObjectSize" );
+        return this;
+    }
+
+
+    public long getCacheTtlSec(){
+        return cacheTtlSec;
+    }
+
+
+    /** @param cacheTtlSec how long a cached viewer is used without asking the platform again, in seconds */
+    public ConnectorConfig setCacheTtlSec( long cacheTtlSec ){
+        this.cacheTtlSec = requirePositive( cacheTtlSec, "cacheTtlSec" );
+        return this;
+    }
+
+
+    public int getSegments(){
+        return segments;
+    }
+
+
+    /**
+     * Download the big resources in several parts, in parallel (see {@link #setSegmentThreshold(long)}). This only
+     * applies to the resources whose server accepts range requests.
+     *
+     * @param segments the number of parallel ranges for one resource, 1 to disable the segmented downloads
+     */
+    public ConnectorConfig setSegments( int segments ){
+        this.segments = requirePositive( segments, "segments" );
+        return this;
+    }
+
+
+    public long getSegmentThreshold(){
+        return segmentThreshold;
+    }
+
+
+    /** @param segmentThreshold the minimum size of a resource for a segmented download, in bytes */
+    public ConnectorConfig setSegmentThreshold( long segmentThreshold ){
+        this.segmentThreshold = requirePositive( segmentThreshold, "segmentThreshold" );
+        return this;
+    }
+
+    /* *****************************************************************
+     * private utils
+     * ****************************************************************/
+
+
+    private static <T extends Number> T requirePositive( T value, String name ){
+        if( value.longValue() <= 0 ){
+            throw new IllegalArgumentException( name + " must be positive, got " + value );
+        }
+        return value;
+    }
+}//end class
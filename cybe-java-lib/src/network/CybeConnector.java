@@ -4,29 +4,47 @@ import org.apache.commons.io.IOUtils;
 import org.apache.http.*;
 import org.apache.http.client.HttpClient;
 import org.apache.http.client.entity.UrlEncodedFormEntity;
+import org.apache.http.client.protocol.HttpClientContext;
 import org.apache.http.client.methods.CloseableHttpResponse;
 import org.apache.http.client.methods.HttpGet;
+import org.apache.http.client.methods.HttpHead;
+import org.apache.http.client.methods.HttpRequestWrapper;
 import org.apache.http.client.methods.HttpPost;
+import org.apache.http.client.methods.HttpUriRequest;
 import org.apache.http.conn.routing.HttpRoute;
 import org.apache.http.cookie.Cookie;
 import org.apache.http.entity.ContentType;
 import org.apache.http.impl.client.*;
+import org.apache.http.impl.client.cache.CacheConfig;
+import org.apache.http.impl.client.cache.CachingHttpClientBuilder;
+import org.apache.http.impl.client.cache.FileResourceFactory;
 import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.apache.http.impl.execchain.ClientExecChain;
 import org.apache.http.message.BasicNameValuePair;
 import org.apache.http.protocol.BasicHttpContext;
+import org.apache.http.protocol.HttpContext;
 import org.apache.http.util.EntityUtils;
 import org.jsoup.Jsoup;
 import org.jsoup.nodes.Document;
 import org.jsoup.nodes.Element;
 import props.PlatformLinks;
+import utils.ResourceWriter;
 import utils.SuperSimpleLogger;
 
 import java.io.*;
 import java.net.URI;
 import java.net.URISyntaxException;
+import java.net.URLEncoder;
+import java.nio.charset.UnsupportedCharsetException;
 import java.util.ArrayList;
 import java.util.Date;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 import static utils.CybeUtils.*;
 
@@ -45,28 +63,25 @@ public class CybeConnector implements Closeable{
     private static final String DEFAULT_ENCODING = "UTF-8";
     private static final String COOKIE_TMP_FILE_PREFIX = "CybeJava-cookies-";
     private static final String COOKIE_TEMP_FILE_EXTENSION = ".ser";
-
-    // TODO make it customisable => instance fields
-    /* maximum number of connections in the pool */
-    private static final int MAX_CONNECTION = 50;
-    /* maximum number of connections per given route */
-    private static final int MAX_CONNECTION_PER_ROUTE = 20;
-    /* maximum number of connections for the platform */
-    private static final int MAX_CONNECTION_TO_TARGET = 20;
+    /* context attribute used to disable the conditional headers for a request */
+    private static final String UNCONDITIONAL_ATTR = "cybe.unconditional";
+    /* unread content above this size is not drained: the download is aborted and the connection closed */
+    private static final long DRAIN_LIMIT = 16 * 1024;
+    /* context attribute set when a request resumes a part file: holds the part */
+    private static final String RESUMED_PART_ATTR = "cybe.resumed.part";
+
+    private static final String CACHE_ENTRIES_DIR = "entries", CACHE_BODIES_DIR = "bodies";
+    /* the pages kept in the cache: course pages and resources/urls viewers */
+    private static final String CACHEABLE_PAGES_REGEX = ".*/(course|mod/resource|mod/url)/view\\.php.*";
+    /* the pages listing the resources: cached, but always revalidated, so that the new resources are seen at once */
+    private static final String COURSE_PAGES_REGEX = ".*/course/view\\.php.*";
 
     /**
      * Simple consumer which write the httpGet content into a file in the current directory.
      * The name of the file is the last part of the url, or a random name if the url ends with "/".
      */
-    public static final ResourceConsumer BASIC_FILE_WRITER = ( type, url, in ) -> {
-        String name = normaliseFilname( lastPartOfUrl( url ) );
-        if( isNullOrEmpty( name ) ) name = File.createTempFile( "cybe-", "" ).getName();
-        try( FileOutputStream out = new FileOutputStream( new File( name ) ) ){
-            IOUtils.copy( in, out );
-        }catch( Exception e ){
-            e.printStackTrace();
-        }
-    };
+    public static final ResourceConsumer BASIC_FILE_WRITER = ResourceConsumer.fileWriter( new File( "." ),
+            ResourceWriter.DEFAULT_MODE );
 
     //----------------------------------------------------
 
@@ -75,9 +90,16 @@ public class CybeConnector implements Closeable{
 
     // connections management
     private CloseableHttpClient httpclient;
+    private HttpTransport transport;
     private PoolingHttpClientConnectionManager connectionManager;
     private BasicCookieStore cookieStore;
     private HttpHost targetHost;
+    private ConnectorConfig config;
+    private AdaptiveConcurrency adaptiveConcurrency; // null if the adaptive mode is off
+    private volatile ValidatorStore validatorStore; // null if no conditional requests should be made
+    private volatile String webServiceToken; // added to the requests of the web service files, null if none
+    private final Map<String, PartFile> partFiles = new ConcurrentHashMap<>(); // normalised url => unfinished download
+    private ExecutorService segmentExecutor; // created on the first segmented download
 
     private PlatformLinks platformLinks; // container for home and login/logout urls
     private boolean connected = false;
@@ -88,35 +110,118 @@ public class CybeConnector implements Closeable{
      * ****************************************************************/
 
 
+    /**
+     * Create a connector for the platform, using the default pool settings.
+     *
+     * @param platform the platform settings
+     */
+    public CybeConnector( PlatformLinks platform ) throws URISyntaxException, IOException{
+        this( platform, ConnectorConfig.defaultConfig() );
+    }
+
+
     /**
      * Create a connector for the platform.
      *
      * @param platform the platform settings
+     * @param config   the pool and cache settings
+     * @throws IOException if the cache directory could not be created
      */
-    public CybeConnector( PlatformLinks platform ) throws URISyntaxException{
+    public CybeConnector( PlatformLinks platform, ConnectorConfig config ) throws URISyntaxException, IOException{
         platformLinks = platform;
+        this.config = config;
         cookieStore = new BasicCookieStore();
 
+        // the route to the platform: use the scheme and port of the home url (https => 443)
+        URI home = new URI( platformLinks.homeUrl() );
+        String scheme = home.getScheme() == null ? "https" : home.getScheme();
+        int port = home.getPort() > 0 ? home.getPort() : ( scheme.equals( "https" ) ? 443 : 80 );
+        targetHost = new HttpHost( home.getHost(), port, scheme );
+        HttpRoute targetRoute = new HttpRoute( targetHost, null, scheme.equals( "https" ) );
+
         // create a multithreaded manager and increase the number of parallel connections
         connectionManager = new PoolingHttpClientConnectionManager();
-        targetHost = new HttpHost( new URI( platformLinks.homeUrl() ).getHost(), 80 ); // Increase max connections
-        // for cybe:80
-        connectionManager.setMaxTotal( MAX_CONNECTION );  // Increase max total connection
-        connectionManager.setDefaultMaxPerRoute( MAX_CONNECTION_PER_ROUTE );  // Increase default max connection per
-        // route
-        connectionManager.setMaxPerRoute( new HttpRoute( targetHost ), MAX_CONNECTION_TO_TARGET );
-
-        httpclient = HttpClients.custom()   //
+        connectionManager.setMaxTotal( config.getMaxTotal() );
+        connectionManager.setDefaultMaxPerRoute( config.getMaxPerRoute() );
+        connectionManager.setMaxPerRoute( targetRoute, config.getMaxToTarget() );
+
+        if( config.isAdaptive() ){
+            adaptiveConcurrency = new AdaptiveConcurrency( connectionManager, targetRoute, config );
+        }
+
+        HttpClientBuilder builder = config.getCacheDir() != null ? //
+                createCachingBuilder( config ) : HttpClients.custom();
+
+        httpclient = builder   //
                 .setDefaultCookieStore( cookieStore )   //
                 .setRedirectStrategy( new LaxRedirectStrategy() )       //
                 .setConnectionManager( connectionManager )    //
+                .addInterceptorFirst( new WebServiceTokenInterceptor() ) //
+                .addInterceptorLast( new ConditionalRequestInterceptor() ) //
                 .build();
+
+        // the asynchronous requests get half of the connections: the resources they find are often viewers, whose
+        // content is fetched synchronously while the first connection is still held
+        transport = new ThreadPoolTransport( httpclient, Math.max( 1, config.getMaxToTarget() / 2 ) );
     }
 
 
     private CybeConnector(){
     }
 
+
+    /*
+     * create a client builder with an on-disk cache. The platform does not allow the caching of its pages,
+     * so their cache headers are overridden: the viewers are fresh during the time-to-live from the config, the
+     * course pages must be revalidated (with their ETag or Last-Modified, if any)
+     */
+    private static HttpClientBuilder createCachingBuilder( ConnectorConfig config ) throws IOException{
+        final long ttl = config.getCacheTtlSec();
+        CacheConfig cacheConfig = CacheConfig.custom()  //
+                .setSharedCache( false )    // the pages are private
+                .setMaxCacheEntries( config.getCacheMaxEntries() ) //
+                .setMaxObjectSize( config.getCacheMaxObjectSize() ) //
+                .build();
+
+        File bodiesDir = new File( config.getCacheDir(), CACHE_BODIES_DIR );
+        if( !bodiesDir.isDirectory() && !bodiesDir.mkdirs() ){
+            throw new IOException( "could not create the cache directory " + bodiesDir );
+        }
+
+        return new CachingHttpClientBuilder(){
+            @Override
+            protected ClientExecChain decorateMainExec( final ClientExecChain mainExec ){
+                // the freshness must be set before the response reaches the cache => wrap the main exec
+                return super.decorateMainExec( ( route, request, context, execAware ) -> {
+                    CloseableHttpResponse response = mainExec.execute( route, request, context, execAware );
+                    if( isCacheablePage( request, response ) ){
+                        boolean course = request.getRequestLine().getUri().matches( COURSE_PAGES_REGEX );
+                        response.setHeader( HttpHeaders.CACHE_CONTROL, "private, " + //
+                                ( course ? "max-age=0, must-revalidate" : "max-age=" + ttl ) );
+                        response.removeHeaders( HttpHeaders.EXPIRES );
+                        response.removeHeaders( "Pragma" );
+                    }else if( request.getRequestLine().getUri().contains( "/webservice/" ) ){
+                        response.setHeader( HttpHeaders.CACHE_CONTROL, "no-store" ); // the url holds the token
+                    }
+                    return response;
+                } );
+            }
+        }.setCacheConfig( cacheConfig ) //
+                .setResourceFactory( new FileResourceFactory( bodiesDir ) ) //
+                .setHttpCacheStorage( new DiskCacheStorage( new File( config.getCacheDir(), CACHE_ENTRIES_DIR ),
+                        config.getCacheMaxEntries(), config.getCacheMaxBytes(), ttl * 1000 ) );
+    }//end createCachingBuilder
+
+
+    /* only the course pages and the resource/url viewers are worth caching */
+    private static boolean isCacheablePage( HttpRequest request, HttpResponse response ){
+        return request.getRequestLine().getMethod().equals( HttpGet.METHOD_NAME ) && //
+                response.getStatusLine().getStatusCode() == HttpStatus.SC_OK && //
+                request.getRequestLine().getUri().matches( CACHEABLE_PAGES_REGEX ) && //
+                ContentType.getOrDefault( response.getEntity() ).getMimeType() //
+                        .equals( ContentType.TEXT_HTML.getMimeType() );
+    }//end isCacheablePage
+
     /* *****************************************************************
      * Connection
      * ****************************************************************/
@@ -235,6 +340,10 @@ public class CybeConnector implements Closeable{
      */
     public void close(){
         try{
+            synchronized( this ){
+                if( segmentExecutor != null ) segmentExecutor.shutdownNow();
+            }
+            transport.close();
             connectionManager.shutdown();
             httpclient.close();
             connected = false;
@@ -259,13 +368,94 @@ public class CybeConnector implements Closeable{
     }
 
 
+    public HttpTransport getTransport(){
+        return transport;
+    }
+
+
+    /**
+     * Replace the transport used to download the resources (the authentication still uses the http client). The new
+     * transport should share the cookie store of {@link #getHttpclient()}. The old one is not closed.
+     *
+     * @param transport the transport
+     */
+    public void setTransport( HttpTransport transport ){
+        this.transport = transport;
+    }
+
+
     public String getHomeUrl(){
-        return targetHost.toURI();
+        return platformLinks.homeUrl();
+    }
+
+
+    public ConnectorConfig getConfig(){
+        return config;
+    }
+
+
+    /** @return the adaptive concurrency controller, or null if the adaptive mode is off */
+    public AdaptiveConcurrency getAdaptiveConcurrency(){
+        return adaptiveConcurrency;
+    }
+
+
+    /** @return the validators store, or null if the conditional requests are disabled */
+    public ValidatorStore getValidatorStore(){
+        return validatorStore;
+    }
+
+
+    /**
+     * Enable the conditional requests. The validators (ETag, Last-Modified) of each resource downloaded will be kept
+     * in the store and sent back to the server the next time the same resource is requested. Note that the store is
+     * not saved by the connector.
+     *
+     * @param validatorStore the store, or null to disable the conditional requests
+     */
+    public void setValidatorStore( ValidatorStore validatorStore ){
+        this.validatorStore = validatorStore;
+    }
+
+
+    /*
+     * the token of the web service, added to the requests of its files (see WebServiceTokenInterceptor). The urls
+     * of the files never contain it: it is not persisted with the validators, the part files or the blobs
+     */
+    void setWebServiceToken( String token ){
+        this.webServiceToken = token;
+    }
+
+
+    /**
+     * Register an unfinished download (see {@link PartFile#findAll(java.io.File)}). The next request for its url
+     * will ask the server for the missing bytes only (Range header), provided the resource did not change in the
+     * meantime (If-Range header). The response is then a 206 - partial content, which {@link
+     * ResourceStream#saveTo(java.io.File)} appends to the part file.
+     *
+     * @param part the part file
+     */
+    public void addPartFile( PartFile part ){
+        if( part.getUrl() != null ) partFiles.put( normaliseUrl( part.getUrl() ), part );
+    }
+
+
+    /*
+     * a resource was stored by its consumer (see ResourceStream#markSaved): remember its validators, for the next
+     * time. The resources rejected or aborted are not remembered, else the next request would be answered by a 304
+     * with no file to keep
+     */
+    void saved( String finalUrl, HttpResponse response ){
+        ValidatorStore store = validatorStore;
+        if( store == null ) return;
+        ValidatorStore.Validators validators = ValidatorStore.Validators.of( response );
+        if( validators != null ) store.put( finalUrl, validators );
     }
 
 
     public void setLogger( SuperSimpleLogger logger ){
         this.logger = logger;
+        if( adaptiveConcurrency != null ) adaptiveConcurrency.setLogger( logger );
     }
 
     /* *****************************************************************
@@ -275,6 +465,11 @@ public class CybeConnector implements Closeable{
 
     /**
      * Get a resource from the platform.
+     * <p/>
+     * If a {@link ValidatorStore} is set (see {@link #setValidatorStore(ValidatorStore)}), the request is made
+     * conditional for the resources downloaded before. If the server answers 304 - not modified, the consumer is
+     * notified through {@link ResourceConsumer#notModified(String)} instead. If it does not handle it, the resource
+     * is requested again, unconditionally.
      *
      * @param url          the url
      * @param consumer     the consumer
@@ -282,38 +477,283 @@ public class CybeConnector implements Closeable{
      * @throws Exception
      */
     public void getResource( String url, ResourceConsumer consumer, HttpErrorHandler errorHandler ) throws Exception{
-        BasicHttpContext context = new BasicHttpContext();
+        getResource( url, consumer, errorHandler, ( RequestHandle ) null );
+    }//end getResource
+
+
+    /**
+     * Same as {@link #getResource(String, network.CybeConnector.ResourceConsumer,
+     * network.CybeConnector.HttpErrorHandler)}, but the requests can be aborted from another thread through the
+     * handle, e.g. if the download takes too long.
+     *
+     * @param url          the url
+     * @param consumer     the consumer
+     * @param errorHandler the error handler
+     * @param handle       the handle, or null
+     * @throws Exception an {@link IOException} if the request was aborted
+     */
+    public void getResource( String url, ResourceConsumer consumer, HttpErrorHandler errorHandler,
+                             RequestHandle handle ) throws Exception{
+        if( !getResource( url, consumer, errorHandler, validatorStore != null, handle ) ){
+            // not modified, but the consumer wants the content anyway
+            getResource( url, consumer, errorHandler, false, handle );
+        }
+    }//end getResource
+
+
+    /**
+     * Get a resource from the platform without blocking the caller: the request is executed by the {@link
+     * HttpTransport} (by default, a pool of threads, see {@link ThreadPoolTransport}) and the consumer is called from
+     * one of its threads. See {@link #getResource(String,
+     * network.CybeConnector.ResourceConsumer, network.CybeConnector.HttpErrorHandler)}.
+     *
+     * @param url          the url
+     * @param consumer     the consumer
+     * @param errorHandler the error handler
+     * @return a future completing once the consumer returned. It completes exceptionally if the request or the
+     * consumer failed.
+     */
+    public CompletableFuture<Void> getResourceAsync( String url, ResourceConsumer consumer,
+                                                     HttpErrorHandler errorHandler ){
+        return getResourceAsync( url, consumer, errorHandler, validatorStore != null ) //
+                .thenCompose( handled -> handled ? CompletableFuture.completedFuture( true ) : //
+                        getResourceAsync( url, consumer, errorHandler, false ) ) //
+                .thenApply( handled -> null );
+    }//end getResourceAsync
+
+
+    /**
+     * Get the metadata of a resource without its content, using a HEAD request. The consumer is called with the
+     * final url, the mime type and an empty stream, whose headers are those of the resource (see {@link
+     * ResourceStream#isHeadersOnly()}). If the server does not support HEAD requests, this falls back to {@link
+     * #getResource(String, network.CybeConnector.ResourceConsumer, network.CybeConnector.HttpErrorHandler)}: a
+     * consumer which does not read the content costs only a few KB anyway.
+     *
+     * @param url          the url
+     * @param consumer     the consumer
+     * @param errorHandler the error handler
+     * @throws Exception
+     */
+    public void headResource( String url, ResourceConsumer consumer, HttpErrorHandler errorHandler ) throws
+            Exception{
+        headResource( url, consumer, errorHandler, null );
+    }//end headResource
+
+
+    /**
+     * See {@link #headResource(String, network.CybeConnector.ResourceConsumer,
+     * network.CybeConnector.HttpErrorHandler)}.
+     *
+     * @param url          the url
+     * @param consumer     the consumer
+     * @param errorHandler the error handler
+     * @param handle       the handle to abort the request, or null
+     * @throws Exception
+     */
+    public void headResource( String url, ResourceConsumer consumer, HttpErrorHandler errorHandler,
+                              RequestHandle handle ) throws Exception{
+        HttpContext context = createContext( false );
+        HttpHead head = new HttpHead( url );
+        if( handle != null ) handle.attach( head );
+        try( CloseableHttpResponse response = execute( head, context ) ){
+
+            int status = response.getStatusLine().getStatusCode();
+
+            if( status == HttpStatus.SC_OK ){
+                String finalUrl = finalUrl( url, context );
+                consumer.accept( mimeTypeOf( response ), finalUrl, //
+                        new ResourceStream( new ByteArrayInputStream( new byte[ 0 ] ), response, finalUrl, this,
+                                head, handle ) );
+
+            }else if( status == HttpStatus.SC_METHOD_NOT_ALLOWED || status == HttpStatus.SC_NOT_IMPLEMENTED ){
+                logger.debug.printf( "HEAD not supported for %s%n", url );
+                getResource( url, consumer, errorHandler, handle );
+
+            }else{
+                if( errorHandler != null ) errorHandler.handleError( url, response );
+            }
+
+        }finally{
+            if( handle != null ) handle.detach( head );
+            head.releaseConnection();
+        }
+    }//end headResource
+
+
+    /* the mime type from the Content-Type header, which is there even if the response has no entity */
+    private static String mimeTypeOf( HttpResponse response ){
+        Header header = response.getFirstHeader( HttpHeaders.CONTENT_TYPE );
+        try{
+            if( header != null ) return ContentType.parse( header.getValue() ).getMimeType();
+        }catch( ParseException | UnsupportedCharsetException e ){
+            // use the default
+        }
+        return ContentType.DEFAULT_BINARY.getMimeType();
+    }//end mimeTypeOf
+
+
+    /* get the resource. Return false if the answer was "not modified", but the consumer did not handle it */
+    private boolean getResource( String url, ResourceConsumer consumer, HttpErrorHandler errorHandler,
+                                 boolean conditional, RequestHandle handle ) throws Exception{
+        HttpContext context = createContext( conditional );
         HttpGet get = new HttpGet( url );
         logger.error.printf( "%s %n", connectionManager.getTotalStats() );
-        try( CloseableHttpResponse response = httpclient.execute( get, context ) ){
+        if( handle == null ){
+            return handleResponse( url, get, context, execute( get, context ), consumer, errorHandler, null );
+        }
 
-            if( response.getStatusLine().getStatusCode() == HttpStatus.SC_OK ){
-                HttpEntity entity = response.getEntity();
-                // if there was an indirection, get the final url
-                RedirectLocations redirects = ( RedirectLocations ) context //
-                        .getAttribute( "http.protocol.redirect-locations" );
+        handle.attach( get );
+        try{
+            return handleResponse( url, get, context, execute( get, context ), consumer, errorHandler, handle );
+        }finally{
+            handle.detach( get );
+        }
+    }//end getResource
 
-                if( redirects != null ){
-                    url = redirects.get( redirects.size() - 1 ).toString();
-                    //url = ( ( HttpRequestWrapper ) context.getAttribute( "http.request" ) ).getURI().toString();
-                }
 
+    /* asynchronous version of getResource */
+    private CompletableFuture<Boolean> getResourceAsync( String url, ResourceConsumer consumer,
+                                                         HttpErrorHandler errorHandler, boolean conditional ){
+        HttpContext context = createContext( conditional );
+        HttpGet get = new HttpGet( url );
+        long start = System.currentTimeMillis();
+
+        return transport.executeAsync( get, context ).thenApply( response -> {
+            try{
+                return handleResponse( url, get, context, record( start, response ), consumer, errorHandler,
+                        null );
+            }catch( Exception e ){
+                throw new CompletionException( e );
+            }
+        } ).whenComplete( ( handled, e ) -> {
+            if( e != null && e.getCause() instanceof IOException && adaptiveConcurrency != null ){
+                adaptiveConcurrency.onError( ( IOException ) e.getCause() );
+            }
+        } );
+    }//end getResourceAsync
+
+
+    private static HttpContext createContext( boolean conditional ){
+        BasicHttpContext context = new BasicHttpContext();
+        if( !conditional ) context.setAttribute( UNCONDITIONAL_ATTR, true );
+        return context;
+    }
+
+
+    /* call the consumer or the error handler, then close the response */
+    private boolean handleResponse( String url, HttpGet get, HttpContext context, CloseableHttpResponse response,
+                                    ResourceConsumer consumer, HttpErrorHandler errorHandler,
+                                    RequestHandle handle ) throws Exception{
+        try{
+
+            int status = response.getStatusLine().getStatusCode();
+
+            if( status == HttpStatus.SC_OK || status == HttpStatus.SC_PARTIAL_CONTENT ){
+                HttpEntity entity = response.getEntity();
+                String finalUrl = finalUrl( url, context );
                 String mimeType = ContentType.getOrDefault( response.getEntity() ).getMimeType();
-                consumer.accept( mimeType, //
-                        url,  //
-                        entity.getContent() );
-                EntityUtils.consume( entity );
+                ResourceStream stream = new ResourceStream( entity.getContent(), response, finalUrl, this, get,
+                        handle );
+                consumer.accept( mimeType, finalUrl, stream );
+                // the request is aborted if the consumer rejected the resource or got it by other means (segmented
+                // download). If it just did not read everything, only drain the connection if it is cheap
+                if( !get.isAborted() ){
+                    long remaining = stream.getRemaining();
+                    if( remaining >= 0 && remaining <= DRAIN_LIMIT ){
+                        EntityUtils.consume( entity ); // keep the connection alive
+                    }else{
+                        logger.debug.printf( "aborting %s (%d bytes unread)%n", finalUrl, remaining );
+                        get.abort();
+                    }
+                }
+
+            }else if( status == HttpStatus.SC_NOT_MODIFIED ){
+                String finalUrl = finalUrl( url, context );
+                logger.debug.printf( "not modified: %s%n", finalUrl );
+                return consumer.notModified( finalUrl );
+
+            }else if( status == HttpStatus.SC_REQUESTED_RANGE_NOT_SATISFIABLE && //
+                    context.getAttribute( RESUMED_PART_ATTR ) != null ){
+                // the part file is bigger than the resource: forget it and start over
+                PartFile part = ( PartFile ) context.getAttribute( RESUMED_PART_ATTR );
+                logger.debug.printf( "cannot resume %s%n", part.getUrl() );
+                partFiles.remove( normaliseUrl( part.getUrl() ) );
+                part.deleteMeta();
+                return false;
 
             }else{
                 if( errorHandler != null ) errorHandler.handleError( url, response );
             }
 
         }finally{
+            response.close();
             get.releaseConnection();
 
         }
+        return true;
+    }//end handleResponse
 
-    }//end getResource
+
+    /* if there was an indirection, get the final url */
+    private static String finalUrl( String url, HttpContext context ){
+        RedirectLocations redirects = ( RedirectLocations ) context //
+                .getAttribute( "http.protocol.redirect-locations" );
+
+        if( redirects != null ){
+            url = redirects.get( redirects.size() - 1 ).toString();
+            //url = ( ( HttpRequestWrapper ) context.getAttribute( "http.request" ) ).getURI().toString();
+        }
+        return url;
+    }//end finalUrl
+
+
+    /* execute a request built elsewhere in the package (e.g. a range), without any conditional header */
+    CloseableHttpResponse execute( HttpUriRequest request ) throws IOException{
+        BasicHttpContext context = new BasicHttpContext();
+        context.setAttribute( UNCONDITIONAL_ATTR, true );
+        return execute( request, context );
+    }//end execute
+
+
+    /* the threads used to download the ranges of a segmented download */
+    synchronized ExecutorService getSegmentExecutor(){
+        if( segmentExecutor == null ){
+            segmentExecutor = Executors.newCachedThreadPool( r -> {
+                Thread thread = new Thread( r, "cybe-segment" );
+                thread.setDaemon( true );
+                return thread;
+            } );
+        }
+        return segmentExecutor;
+    }//end getSegmentExecutor
+
+
+    /* execute the request, feeding the adaptive concurrency controller (if any) */
+    private CloseableHttpResponse execute( HttpUriRequest request, HttpContext context ) throws IOException{
+        if( adaptiveConcurrency == null ) return transport.execute( request, context );
+
+        long start = System.currentTimeMillis();
+        try{
+            return record( start, transport.execute( request, context ) );
+        }catch( IOException e ){
+            adaptiveConcurrency.onError( e );
+            throw e;
+        }
+    }//end execute
+
+
+    /* feed the adaptive concurrency controller (if any) with the response of a request started at start */
+    private CloseableHttpResponse record( long start, CloseableHttpResponse response ){
+        if( adaptiveConcurrency == null ) return response;
+
+        int status = response.getStatusLine().getStatusCode();
+        if( status == 429 || status == HttpStatus.SC_SERVICE_UNAVAILABLE ){
+            adaptiveConcurrency.onOverload( status );
+        }else{
+            adaptiveConcurrency.onSuccess( System.currentTimeMillis() - start );
+        }
+        return response;
+    }//end record
 
 
     /**
@@ -397,6 +837,81 @@ public class CybeConnector implements Closeable{
                 COOKIE_TMP_FILE_PREFIX, platformLinks.organisationName(), COOKIE_TEMP_FILE_EXTENSION );
     }
 
+    /* *****************************************************************
+     * conditional requests
+     * ****************************************************************/
+
+    /*
+     * Add the If-None-Match/If-Modified-Since headers to the GET requests whose url is in the validator store, or the
+     * Range/If-Range headers if the url is an unfinished download. Since the interceptor is called for every hop,
+     * this works even if the requested url redirects to the resource.
+     */
+    private class ConditionalRequestInterceptor implements HttpRequestInterceptor{
+
+        @Override
+        public void process( HttpRequest request, HttpContext context ){
+            if( !request.getRequestLine().getMethod().equals( HttpGet.METHOD_NAME ) ) return;
+            if( request.containsHeader( HttpHeaders.RANGE ) ) return; // explicit range, e.g. segmented download
+            String uri = requestUri( request, context );
+
+            PartFile part = partFiles.get( normaliseUrl( uri ) );
+            if( part != null ){
+                part = PartFile.of( part.getTarget() ); // reload, the offset may have changed since
+                if( part.canResume() ){
+                    request.setHeader( HttpHeaders.RANGE, "bytes=" + part.getOffset() + "-" );
+                    request.setHeader( HttpHeaders.IF_RANGE, part.getIfRangeValidator() );
+                    context.setAttribute( RESUMED_PART_ATTR, part );
+                    return;
+                }
+            }
+
+            ValidatorStore store = validatorStore;
+            if( store == null || context.getAttribute( UNCONDITIONAL_ATTR ) != null ) return;
+
+            ValidatorStore.Validators validators = store.get( uri );
+            if( validators == null ) return;
+
+            if( validators.getEtag() != null ){
+                request.setHeader( HttpHeaders.IF_NONE_MATCH, validators.getEtag() );
+            }
+            if( validators.getLastModified() != null ){
+                request.setHeader( HttpHeaders.IF_MODIFIED_SINCE, validators.getLastModified() );
+            }
+        }
+    }
+
+
+    /* add the token of the web service to the requests of its files, once the url is no longer seen by anyone */
+    private class WebServiceTokenInterceptor implements HttpRequestInterceptor{
+
+        @Override
+        public void process( HttpRequest request, HttpContext context ) throws IOException{
+            String token = webServiceToken;
+            if( token == null || !( request instanceof HttpRequestWrapper ) ) return;
+            if( !requestUri( request, context ).startsWith( platformLinks.webServiceFileUrl() ) ) return;
+
+            HttpRequestWrapper wrapper = ( HttpRequestWrapper ) request;
+            String uri = wrapper.getURI().toString();
+            wrapper.setURI( URI.create( uri + ( uri.contains( "?" ) ? "&" : "?" ) + "token=" + //
+                    URLEncoder.encode( token, DEFAULT_ENCODING ) ) );
+        }
+    }
+
+
+    /* get the absolute uri of a request, as seen by an interceptor */
+    private static String requestUri( HttpRequest request, HttpContext context ){
+        HttpRequest original = request instanceof HttpRequestWrapper ? //
+                ( ( HttpRequestWrapper ) request ).getOriginal() : request;
+        URI uri = original instanceof HttpUriRequest ? ( ( HttpUriRequest ) original ).getURI() : //
+                URI.create( request.getRequestLine().getUri() );
+
+        if( !uri.isAbsolute() ){
+            HttpHost target = HttpClientContext.adapt( context ).getTargetHost();
+            if( target != null ) uri = URI.create( target.toURI() ).resolve( uri );
+        }
+        return uri.toString();
+    }//end requestUri
+
     /* *****************************************************************
      * Functional interfaces
      * ****************************************************************/
@@ -428,11 +943,44 @@ public class CybeConnector implements Closeable{
          * @param stream      the stream. Use {@link IOUtils#toString(java.io.InputStream)} or {@link
          *                    EntityUtils#toString(org.apache.http.HttpEntity, java.nio.charset.Charset)} if you need
          *                    to
-         *                    convert it to a string. Note that you don't need to close it, it will be handled by the
-         *                    connector directly.
+         *                    convert it to a string and {@link ResourceStream#saveTo(java.io.File,
+         *                    utils.ResourceWriter.Mode)} to write it into a file. Note that you don't need to close
+         *                    it, it will be handled by the connector directly.
          * @throws Exception
          */
-        void accept( String contentType, String url, InputStream stream ) throws Exception;
+        void accept( String contentType, String url, ResourceStream stream ) throws Exception;
+
+
+        /**
+         * Called instead of {@link #accept(String, String, java.io.InputStream)} when the server answered 304 - not
+         * modified to a conditional request, i.e. the resource did not change since it was last downloaded.
+         *
+         * @param url the url of the resource. It could be different from the requested one due to redirects
+         * @return true if the resource is handled, false to download it anyway. The default implementation returns
+         * false.
+         * @throws Exception
+         */
+        default boolean notModified( String url ) throws Exception{
+            return false;
+        }
+
+
+        /**
+         * Create a consumer which writes the resources into the given directory. The name of the file is the last
+         * part of the url, or a random name if the url ends with "/". A failed write is thrown to the caller of
+         * the connector.
+         *
+         * @param dir  the directory
+         * @param mode how to write the files
+         * @return the consumer
+         */
+        static ResourceConsumer fileWriter( File dir, ResourceWriter.Mode mode ){
+            return ( type, url, in ) -> {
+                String name = normaliseFilname( lastPartOfUrl( url ) );
+                if( isNullOrEmpty( name ) ) name = File.createTempFile( "cybe-", "", dir ).getName();
+                in.saveTo( new File( dir, name ), mode );
+            };
+        }//end fileWriter
     }
 
 }//end class
@@ -2,21 +2,28 @@ package network;
 
 import network.CybeConnector.HttpErrorHandler;
 import network.CybeConnector.ResourceConsumer;
-import org.apache.commons.io.IOUtils;
 import org.apache.http.NameValuePair;
+import org.apache.http.ParseException;
 import org.apache.http.entity.ContentType;
 import org.apache.http.message.BasicNameValuePair;
-import org.jsoup.Jsoup;
-import org.jsoup.nodes.Document;
-import org.jsoup.nodes.Element;
-import org.jsoup.select.Elements;
 import utils.CybeUtils;
 import utils.SuperSimpleLogger;
 
 import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.io.UnsupportedEncodingException;
+import java.net.URI;
+import java.net.URISyntaxException;
 import java.net.URLDecoder;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.charset.UnsupportedCharsetException;
 import java.util.*;
 import java.util.concurrent.*;
+import java.util.function.Consumer;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 
 import static utils.CybeUtils.*;
 
@@ -27,11 +34,24 @@ import static utils.CybeUtils.*;
  */
 public class CybeParser {
 
-    private ExecutorService pool = Executors.newWorkStealingPool();
+    /* default maximum time to find and download one resource */
+    public static final long DEFAULT_TASK_TIMEOUT_SEC = 600;
+    /* default maximum depth of the crawl: course page => folder => file */
+    public static final int DEFAULT_MAX_DEPTH = 3;
+    /* the modules whose content is crawled */
+    private static final Pattern CONTAINER_PATTERN = Pattern.compile( ".+/mod/(folder|page|book)/.+" );
+    /* a module page, e.g. /mod/book/view.php?id=12&chapterid=3 => /mod/book/view.php, 12 */
+    private static final Pattern MODULE_PATTERN = Pattern.compile( "(/mod/\\w+/[\\w.]+)\\?(?:.*&)?id=(\\d+).*" );
+
+    private volatile ExecutorService pool = ExecutorStrategy.WORK_STEALING.newExecutor( 0 );
+    private ScheduledExecutorService watchdog; // cancels the tasks taking too long, created on first use
+    private volatile long taskTimeoutSec = DEFAULT_TASK_TIMEOUT_SEC;
+    private volatile int maxDepth = DEFAULT_MAX_DEPTH;
+    private volatile int courseWindow; // max tasks of a course in the pool at once, 0 for no limit
     private CybeConnector connector;
+    private volatile WebServiceBackend webService; // null to parse the html pages only
 
     private SuperSimpleLogger logger = SuperSimpleLogger.silentInstance();
-    private HttpErrorHandler errorHandler;
 
 
     /**
@@ -71,65 +91,288 @@ public class CybeParser {
      * calling the consumer.accept method for each
      * one.
      * Careful: the consumer can be called in parallel from different threads..
+     * <p/>
+     * The content of the folders, pages and books is crawled too, up to the maximum depth (see {@link
+     * #setMaxDepth(int)}). Each link found is scheduled as a new task as soon as its page is parsed, so the returned
+     * list grows until all the tasks are done: a task always adds the tasks it discovers before completing.
      *
      * @param baseUrl      the url of the course page
      * @param consumer     the consumer. Note: the consumer could be called from different threads !
      * @param errorHandler the error handler to use
      * @return a list of futures, allowing you to retrieve a map of (resource name, resource url). See {@link
-     *         #futuresToMap(java.util.List, int)}.
+     *         #gather(java.util.List, long, java.util.function.Consumer)}. Cancelling a future aborts its requests.
      * @throws Exception {@link IOException} and any other exception that could be thrown by the consumer
      */
     public List<Future<NameValuePair>> findCourseResources( String baseUrl, ResourceConsumer consumer,
                                                             HttpErrorHandler errorHandler ) throws Exception{
+        return findCourseResources( baseUrl, consumer, errorHandler, false );
+    }
 
-        final Set<String> alreadySeen = new TreeSet<>();
-        List<Future<NameValuePair>> list = new ArrayList<>();
 
-        connector.getResource( baseUrl, ( type, name, in ) -> {
-            Document doc = Jsoup.parse( IOUtils.toString( in ) );
-            Elements links = doc.select( "#region-main a[href]" );  // get all links
+    /**
+     * Same as {@link #findCourseResources(String, network.CybeConnector.ResourceConsumer,
+     * network.CybeConnector.HttpErrorHandler)}, but with a metadata only mode: the resources are found using HEAD
+     * requests, so the consumer gets their name, type and headers (see {@link ResourceStream#isHeadersOnly()}), but
+     * not their content. Only the course page and the viewers are downloaded.
+     *
+     * @param baseUrl      the url of the course page
+     * @param consumer     the consumer. Note: the consumer could be called from different threads !
+     * @param errorHandler the error handler to use
+     * @param metadataOnly true to get the metadata only, without transferring the resources
+     * @return a list of futures, allowing you to retrieve a map of (resource name, resource url).
+     * @throws Exception {@link IOException} and any other exception that could be thrown by the consumer
+     */
+    public List<Future<NameValuePair>> findCourseResources( String baseUrl, ResourceConsumer consumer,
+                                                            HttpErrorHandler errorHandler,
+                                                            boolean metadataOnly ) throws Exception{
+        return findCourseResources( baseUrl, consumer, errorHandler, metadataOnly, null );
+    }
 
-            links.stream()
-                    // get the href attr
-                    .map( link -> link.attr( "href" ) )
-                            // keep only potential resource links
-                    .filter( CybeParser::isLinkOfInterest )
-                            // don't process a link twice
-                    .filter( alreadySeen::add )
-                            // submit the job to the pool
-                    .forEach( href -> {
-                        list.add( pool.submit( new CallableResourceFinder( href, consumer ) ) );
-                    } );
 
-        }, errorHandler );
+    /**
+     * Same as {@link #findCourseResources(String, network.CybeConnector.ResourceConsumer,
+     * network.CybeConnector.HttpErrorHandler, boolean)}, using an index of the links of the course: the links
+     * already resolved in a previous run lead directly to their resource, without going through the viewers again.
+     * The index is updated with the new resolutions, but not saved.
+     *
+     * @param baseUrl      the url of the course page
+     * @param consumer     the consumer. Note: the consumer could be called from different threads !
+     * @param errorHandler the error handler to use
+     * @param metadataOnly true to get the metadata only, without transferring the resources
+     * @param index        the index of the course, or null
+     * @return a list of futures, allowing you to retrieve a map of (resource name, resource url).
+     * @throws Exception {@link IOException} and any other exception that could be thrown by the consumer
+     */
+    public List<Future<NameValuePair>> findCourseResources( String baseUrl, ResourceConsumer consumer,
+                                                            HttpErrorHandler errorHandler, boolean metadataOnly,
+                                                            ResolutionIndex index ) throws Exception{
+        return findCourseResources( baseUrl, consumer, errorHandler, metadataOnly, index, null );
+    }
 
-        return list;
+
+    /**
+     * Same as {@link #findCourseResources(String, network.CybeConnector.ResourceConsumer,
+     * network.CybeConnector.HttpErrorHandler, boolean, ResolutionIndex)}, skipping the sections and pages which did
+     * not change since the previous run. The fingerprints of the pages crawled are added to the given instance: keep
+     * them for the next run only if the run was complete (see {@link Fingerprints#isComplete()}).
+     *
+     * @param baseUrl      the url of the course page
+     * @param consumer     the consumer. Note: the consumer could be called from different threads !
+     * @param errorHandler the error handler to use
+     * @param metadataOnly true to get the metadata only, without transferring the resources
+     * @param index        the index of the course, or null
+     * @param fingerprints the fingerprints of the previous run, or null to crawl everything
+     * @return a list of futures, allowing you to retrieve a map of (resource name, resource url).
+     * @throws Exception {@link IOException} and any other exception that could be thrown by the consumer
+     */
+    public List<Future<NameValuePair>> findCourseResources( String baseUrl, ResourceConsumer consumer,
+                                                            HttpErrorHandler errorHandler, boolean metadataOnly,
+                                                            ResolutionIndex index,
+                                                            Fingerprints fingerprints ) throws Exception{
+
+        Crawl crawl = new Crawl( consumer, errorHandler, metadataOnly, index, fingerprints );
+        WebServiceBackend ws = webService;
+        if( ws != null && ws.isAvailable() ){
+            try{
+                // one call instead of the course page and the viewers
+                scheduleFiles( crawl, baseUrl, ws.getCourseContents( baseUrl ) );
+                return crawl.tasks;
+            }catch( IOException e ){
+                logger.warn.printf( "Web service failed (%s), parsing the course page instead.%n", e.getMessage() );
+            }
+        }
+
+        crawl.visited.add( normaliseUrl( baseUrl ) );
+        // the jobs are submitted while the page is still being read
+        connector.getResource( baseUrl, ( type, finalUrl, in ) -> crawl.scheduleLinks( readerOf( in ), finalUrl, 0,
+                null ), crawl.errorHandler );
+
+        return crawl.tasks;
     }//end getAllResources
 
 
+    /**
+     * Find the resource behind a single link of a course page without blocking the caller: the link is followed by
+     * a task of this parser, like the links of {@link #findCourseResources(String, network.CybeConnector
+     * .ResourceConsumer, network.CybeConnector.HttpErrorHandler, boolean, ResolutionIndex)}. If the link leads to a
+     * folder, the resources of the folder are also given to the consumer, but the future only completes with the
+     * result of the link itself.
+     *
+     * @param href         the link, leading either to a resource or to a viewer
+     * @param consumer     the consumer of the resource, called from a thread of this parser
+     * @param errorHandler the error handler, or null
+     * @return the future (resource name, resource url), completing with null if no resource was found. Cancelling it
+     * aborts the requests.
+     */
+    public CompletableFuture<NameValuePair> findResourceAsync( String href, ResourceConsumer consumer,
+                                                               HttpErrorHandler errorHandler ){
+        Crawl crawl = new Crawl( consumer, errorHandler, false, null, null );
+        crawl.visited.add( normaliseUrl( href ) );
+        return submit( new CallableResourceFinder( crawl, href, 1, href ) );
+    }//end findResourceAsync
+
+
 
 
     /**
-     * Wait for all the future tasks to complete and return their results into a map
+     * Wait for all the future tasks to complete and return their results into a map. See {@link #gather(java.util
+     * .List, long, java.util.function.Consumer)}.
      *
      * @param futures the list of futures
-     * @param timeout the timeout, in milliseconds. It must be positive.
+     * @param timeout the maximum time to wait for all the tasks, in seconds. It must be positive.
      * @return a map of resource names and resources urls.
      */
     public Map<String, String> futuresToMap( List<Future<NameValuePair>> futures, final int timeout ){
-        // using a parallel stream here divides the runtime by a factor 2
-        final Map<String, String> result = new TreeMap<>(  );
-        futures.stream()
-                // wait for each task to finish
-                .map( f -> CybeParser.getWithTimeout( f, timeout, logger ) )
-                        // don't process null values
-                .filter( f -> f != null )
-                        // convert the result to a map
-                .forEach( (pair) -> { result.put( pair.getName(), pair.getValue() ); } );
+        return gather( futures, timeout, null );
+    }//end futuresToMap
+
+
+    /**
+     * Wait for the future tasks to complete and return their results into a map.
+     * <p/>
+     * The results are collected in completion order, so a slow task does not delay the others: each result is given
+     * to the callback as soon as it is available. Once the deadline is reached, the remaining tasks are cancelled
+     * (which aborts their requests) and the results gathered so far are returned.
+     * <p/>
+     * Note that each task is also limited by the task timeout of this parser (see {@link #setTaskTimeout(long)}).
+     * The list of futures can grow while this method is running (see {@link #findCourseResources(String,
+     * network.CybeConnector.ResourceConsumer)}): the new futures are waited for as well.
+     *
+     * @param futures  the futures, as returned by {@link #findCourseResources(String,
+     *                 network.CybeConnector.ResourceConsumer)}
+     * @param deadline the maximum time to wait for all the tasks, in seconds
+     * @param onResult called (from the current thread) with each result as it comes, or null
+     * @return a map of resource names and resources urls.
+     */
+    public Map<String, String> gather( List<? extends Future<NameValuePair>> futures, long deadline,
+                                       Consumer<NameValuePair> onResult ){
+        final Map<String, String> result = new TreeMap<>();
+        final long end = System.nanoTime() + TimeUnit.SECONDS.toNanos( deadline );
+
+        // the completable futures notify their completion, the others are waited for in order
+        BlockingQueue<Future<NameValuePair>> completed = new LinkedBlockingQueue<>();
+        List<Future<NameValuePair>> others = new ArrayList<>();
+        int registered = 0, pending = 0;
+
+        try{
+            while( true ){
+                // the tasks added since the last completion (the list only grows)
+                for( ; registered < futures.size(); registered++ ){
+                    Future<NameValuePair> future = futures.get( registered );
+                    if( future instanceof CompletableFuture ){
+                        ( ( CompletableFuture<NameValuePair> ) future ).whenComplete( ( r, e ) -> //
+                                completed.add( future ) );
+                        pending++;
+                    }else{
+                        others.add( future );
+                    }
+                }//end for
+                if( pending == 0 ) break;
 
+                Future<NameValuePair> future = completed.poll( end - System.nanoTime(), TimeUnit.NANOSECONDS );
+                if( future == null ) break; // deadline reached
+                pending--;
+                collect( future, 0, result, onResult );
+            }//end while
+
+            for( Future<NameValuePair> future : others ){
+                collect( future, Math.max( 0, end - System.nanoTime() ), result, onResult );
+            }//end for
+
+        }catch( InterruptedException e ){
+            Thread.currentThread().interrupt();
+        }
+
+        List<Future<NameValuePair>> snapshot = new ArrayList<>( futures );
+        long unfinished = snapshot.stream().filter( f -> !f.isDone() ).count();
+        if( unfinished > 0 ){
+            logger.warn.printf( "Deadline reached, cancelling %d unfinished tasks%n", unfinished );
+            snapshot.forEach( f -> f.cancel( true ) );
+        }
         return result;
-    }//end getListOfCourses
+    }//end gather
+
 
+    /**
+     * Set the maximum time to find and download one resource. Once it is over, the requests of the task are aborted
+     * and its future completes with a {@link TimeoutException}.
+     *
+     * @param taskTimeoutSec the timeout in seconds, or 0 for no timeout
+     */
+    public void setTaskTimeout( long taskTimeoutSec ){
+        this.taskTimeoutSec = taskTimeoutSec;
+    }
+
+
+    /**
+     * Use the moodle web service to list the courses and their resources, instead of parsing the html pages. If the
+     * web service is not available or fails, the html pages are parsed as usual.
+     *
+     * @param webService the web service, or null to parse the html pages only
+     */
+    public void setWebService( WebServiceBackend webService ){
+        this.webService = webService;
+    }
+
+
+    /**
+     * Set how deep the folders, pages and books are crawled. The links of the course page are at depth 1, the links
+     * of a folder of the course page at depth 2, etc. The pages of a same module (e.g. the chapters of a book) and the
+     * viewers leading to a resource do not count as a new level.
+     *
+     * @param maxDepth the maximum depth, 1 to get the resources of the course page only
+     */
+    public void setMaxDepth( int maxDepth ){
+        this.maxDepth = maxDepth;
+    }
+
+
+    /**
+     * Limit the number of tasks of a same course in the pool at once, so that the courses crawled concurrently
+     * progress together: the tasks are run in submission order, so one course with hundreds of links would otherwise
+     * fill the queue of the pool before the others. The tasks above the window wait in their course and are
+     * submitted one by one as the running ones complete. This is applied to the crawls started afterwards.
+     *
+     * @param courseWindow the maximum number of tasks of a course in the pool, or 0 for no limit (the default)
+     */
+    public void setCourseWindow( int courseWindow ){
+        this.courseWindow = Math.max( 0, courseWindow );
+    }
+
+
+    /**
+     * Choose how the resource finders are run (a work-stealing pool by default). With {@link
+     * ExecutorStrategy#FIXED} and {@link ExecutorStrategy#THREAD_PER_TASK}, the number of finders running at the same
+     * time is the maximum number of connections to the platform (see {@link ConnectorConfig#getMaxToTarget()}).
+     * The tasks already submitted are not affected.
+     *
+     * @param strategy the strategy
+     */
+    public void setExecutorStrategy( ExecutorStrategy strategy ){
+        ExecutorService old = pool;
+        pool = strategy.newExecutor( connector.getConfig().getMaxToTarget() );
+        old.shutdown(); // the running tasks go on
+    }//end setExecutorStrategy
+
+
+    /**
+     * Stop the parser, e.g. before saving what its consumers modify: no new task is accepted, and the tasks already
+     * submitted are given the timeout to complete. After that, the remaining ones are interrupted.
+     *
+     * @param timeoutSec the maximum time to wait, in seconds
+     * @return true if all the tasks completed in time
+     */
+    public boolean shutdown( long timeoutSec ){
+        ExecutorService current = pool;
+        current.shutdown();
+        try{
+            if( current.awaitTermination( timeoutSec, TimeUnit.SECONDS ) ) return true;
+        }catch( InterruptedException e ){
+            Thread.currentThread().interrupt();
+        }
+        current.shutdownNow();
+        return false;
+    }//end shutdown
 
 
     /**
@@ -140,16 +383,29 @@ public class CybeParser {
      *                   network.CybeConnector.HttpErrorHandler)}
      */
     public Map<String, String> getListOfCourses() throws Exception{
+        WebServiceBackend ws = webService;
+        if( ws != null && ws.isAvailable() ){
+            try{
+                return ws.getCourses();
+            }catch( IOException e ){
+                logger.warn.printf( "Web service failed (%s), parsing the home page instead.%n", e.getMessage() );
+            }
+        }
 
         final Map<String, String> courses = new HashMap<>();
 
         connector.getResource( connector.getHomeUrl(), ( ct, n, i ) -> {
-            String welcomePage = IOUtils.toString( i );
-            Document doc = Jsoup.parse( welcomePage );
-            doc.select( "li.type_course a[title]" ).forEach( ( a ) -> {
-                courses.put( a.attr( "title" ), a.attr( "href" ) );
+            // li.type_course a[title]
+            LinkExtractor.Region course = new LinkExtractor.Region( tag -> tag.is( "li" ) && //
+                    tag.hasClass( "type_course" ) );
+            LinkExtractor.scan( readerOf( i ), tag -> {
+                if( course.update( tag ) && tag.is( "a" ) && tag.attr( "title" ) != null ){
+                    String href = tag.attr( "href" );
+                    courses.put( tag.attr( "title" ), href != null ? href : "" );
+                }
+                return true;
             } );
-        }, errorHandler );
+        }, null );
 
         return courses;
     }//end getListOfCourses
@@ -174,140 +430,536 @@ public class CybeParser {
 
         res = href.matches( ".+((\\.pdf)|(resource)).*" ); // direct link or subpage with <object>
         res |= href.matches( ".+/mod/url.+" );  // link to a subpage with an iframe viewer
+        res |= href.matches( ".+/pluginfile\\.php/.+" ); // a file, e.g. in a folder
+        res |= CONTAINER_PATTERN.matcher( href ).matches(); // folder, page or book, crawled
 
         return res;
     }//end isLinkOfInterest
 
 
     /*
-     * get a filename from  a link of the course page
-     * @param   link  the link DOM element
-     * @return  the filename, or an empty string
+     * schedule the download of the files listed by the web service. With fingerprints, the files of the sections
+     * whose files did not change (same urls, sizes and dates) are skipped
      */
-    private String getFileName( Element link ){
+    private void scheduleFiles( Crawl crawl, String courseUrl, List<WebServiceBackend.Section> sections ){
+        String page = normaliseUrl( courseUrl );
+        for( WebServiceBackend.Section section : sections ){
+            if( crawl.fingerprints != null ){
+                Fingerprints.Digest digest = new Fingerprints.Digest();
+                section.getFiles().forEach( f -> digest.update( f.getFileUrl() + " " + f.getSize() + " " + //
+                        f.getTimeModified() ) );
+                if( !crawl.fingerprints.update( page + "#ws-section-" + section.getId(), digest ) ){
+                    logger.debug.printf( "unchanged: section %s%n", section.getName() );
+                    continue;
+                }
+            }
+            section.getFiles().forEach( f -> crawl.schedule( f.getFileUrl(), 1, null ) );
+        }//end for
+    }//end scheduleFiles
 
-        String href = link.attr( "href" );
-        String filename = lastPartOfUrl( href );
 
-        if( !isNullOrEmpty( filename ) && filename.matches( ".+\\.[a-z]{2,4}$" ) ){
-            return normaliseFilname( filename );
+    /* the module of a page, e.g. "/mod/book/view.php?id=12" for any chapter of the book, or null */
+    private static String moduleOf( String url ){
+        try{
+            URI uri = new URI( url );
+            Matcher matcher = MODULE_PATTERN.matcher( uri.getRawPath() + "?" + uri.getRawQuery() );
+            return matcher.matches() ? uri.getHost() + matcher.group( 1 ) + "?id=" + matcher.group( 2 ) : null;
+        }catch( URISyntaxException | NullPointerException e ){
+            return null;
         }
+    }//end moduleOf
 
-        // TODO
-        Element span = link.select( "span.instancename" ).first();
-        span.child( 0 ).remove();
-        filename = CybeUtils.normaliseFilname( span.text() ).trim();
-        if( link.toString().contains( "pdf-24" ) ) filename += ".pdf";
-        filename = link.select( "span.instancename" ).text();
-        if( !isNullOrEmpty( filename ) ){
-            return filename;
+
+    /* resolve a link found in a page */
+    private static String resolve( String pageUrl, String href ){
+        try{
+            return new URI( pageUrl ).resolve( href.trim() ).toString();
+        }catch( URISyntaxException | IllegalArgumentException e ){
+            return href;
         }
+    }//end resolve
 
-        return "";
-    }
+
+    /*
+     * get a reader for an html page, using the charset of the response (utf-8 by default)
+     */
+    private static Reader readerOf( ResourceStream in ){
+        Charset charset = null;
+        try{
+            ContentType type = ContentType.get( in.getResponse().getEntity() );
+            if( type != null ) charset = type.getCharset();
+        }catch( ParseException | UnsupportedCharsetException e ){
+            // use the default
+        }
+        return new InputStreamReader( in, charset != null ? charset : StandardCharsets.UTF_8 );
+    }//end readerOf
 
 
     /*
-     * get the result of a future (or null if the timeout is reached). The timeout is in seconds.
+     * add the result of a future (if any, before the timeout) to the map. The timeout is in nanoseconds.
      */
-    private static NameValuePair getWithTimeout( Future<NameValuePair> f, int timeout,
-                                                 SuperSimpleLogger logger ){
+    private void collect( Future<NameValuePair> f, long timeout, Map<String, String> result,
+                          Consumer<NameValuePair> onResult ) throws InterruptedException{
         try{
-            return f.get( timeout, TimeUnit.SECONDS );
-        }catch( Exception e ){
-            logger.error.printf( "Exception while gathering future resources: %s%n", e.getMessage() );
-            return null;
+            NameValuePair pair = f.get( timeout, TimeUnit.NANOSECONDS );
+            if( pair == null ) return;
+            result.put( pair.getName(), pair.getValue() );
+            if( onResult != null ) onResult.accept( pair );
+
+        }catch( ExecutionException | TimeoutException | CancellationException e ){
+            Throwable cause = e.getCause() != null ? e.getCause() : e;
+            logger.error.printf( "Exception while gathering future resources: %s%n", cause );
         }
-    }
+    }//end collect
+
+
+    /*
+     * run the finder in the pool. The future can be cancelled: this aborts the requests of the finder. Once the
+     * task starts, it is cancelled after the task timeout.
+     */
+    private CompletableFuture<NameValuePair> submit( CallableResourceFinder finder ){
+        CompletableFuture<NameValuePair> future = new CompletableFuture<>();
+        future.whenComplete( ( r, e ) -> {
+            if( e == null ) return;
+            finder.handle.cancel(); // cancelled or timed out
+            finder.crawl.failed();
+        } );
+
+        Runnable task = () -> {
+            if( future.isDone() ) return; // cancelled before it started
+            long timeout = taskTimeoutSec;
+            ScheduledFuture<?> timer = timeout <= 0 ? null : getWatchdog().schedule( () -> //
+                    future.completeExceptionally( new TimeoutException( "timeout: " + finder.url ) ), //
+                    timeout, TimeUnit.SECONDS );
+            try{
+                future.complete( finder.call() );
+            }catch( Throwable e ){
+                future.completeExceptionally( e );
+            }finally{
+                if( timer != null ) timer.cancel( false );
+            }
+        };
+        finder.crawl.execute( task );
+        return future;
+    }//end submit
+
+
+    private synchronized ScheduledExecutorService getWatchdog(){
+        if( watchdog == null ){
+            watchdog = Executors.newSingleThreadScheduledExecutor( r -> {
+                Thread thread = new Thread( r, "cybe-watchdog" );
+                thread.setDaemon( true );
+                return thread;
+            } );
+        }
+        return watchdog;
+    }//end getWatchdog
 
 
     /* *****************************************************************
      * resource finder class
      * ****************************************************************/
 
+    /*
+     * The state of the crawl of a course page: the tasks scheduled so far (the frontier, see gather) and the urls
+     * already visited.
+     */
+    private class Crawl{
+        final List<Future<NameValuePair>> tasks = Collections.synchronizedList( new ArrayList<>() );
+        final Set<String> visited = ConcurrentHashMap.newKeySet(); // normalised urls
+        // normalised final url => resource already handled during this run
+        final Map<String, NameValuePair> claimed = new ConcurrentHashMap<>();
+        final ResourceConsumer consumer;
+        final HttpErrorHandler errorHandler;
+        final boolean metadataOnly;
+        final ResolutionIndex index; // may be null
+        final Fingerprints fingerprints; // may be null
+        // the tasks waiting for a place in the window (see setCourseWindow)
+        private final Queue<Runnable> waiting = new ArrayDeque<>();
+        private final int window = courseWindow;
+        private int running; // guarded by waiting
+
+
+        Crawl( ResourceConsumer consumer, HttpErrorHandler errorHandler, boolean metadataOnly, ResolutionIndex index,
+               Fingerprints fingerprints ){
+            this.consumer = consumer;
+            this.metadataOnly = metadataOnly;
+            this.index = index;
+            this.fingerprints = fingerprints;
+            this.errorHandler = ( url, response ) -> {
+                failed();
+                if( errorHandler != null ) errorHandler.handleError( url, response );
+            };
+        }
+
+
+        /* a task failed: the fingerprints must not be trusted */
+        void failed(){
+            if( fingerprints != null ) fingerprints.setIncomplete();
+        }
+
+
+        /* run the task in the pool, or keep it for later if the window of the crawl is full */
+        void execute( Runnable task ){
+            if( window <= 0 ){
+                pool.execute( task );
+                return;
+            }
+            synchronized( waiting ){
+                if( running >= window ){
+                    waiting.add( task );
+                    return;
+                }
+                running++;
+            }
+            pool.execute( () -> runAndNext( task ) );
+        }//end execute
+
+
+        /* run the task, then give its place in the window to the next one */
+        private void runAndNext( Runnable task ){
+            try{
+                task.run();
+            }finally{
+                Runnable next;
+                synchronized( waiting ){
+                    next = waiting.poll();
+                    if( next == null ) running--;
+                }
+                if( next != null ) pool.execute( () -> runAndNext( next ) );
+            }
+        }//end runAndNext
+
+
+        /*
+         * schedule a new task for the link, unless it was already visited or is too deep. The origin is the link of
+         * the course (or folder) page which led to it, null if this is the link itself
+         */
+        void schedule( String href, int depth, String origin ){
+            if( depth > maxDepth || !visited.add( normaliseUrl( href ) ) ) return;
+            tasks.add( submit( new CallableResourceFinder( this, href, depth, origin != null ? origin : href ) ) );
+        }//end schedule
+
+
+        /*
+         * #region-main a[href]: schedule the links of interest of a page. The reading stops at the end of the region
+         * (the rest of the page, i.e. the sidebars, is garbage) or if the task is cancelled.
+         */
+        void scheduleLinks( Reader reader, String pageUrl, int depth, RequestHandle handle ) throws IOException{
+            PageVisitor visitor = new PageVisitor( pageUrl, depth, handle );
+            LinkExtractor.scan( reader, visitor );
+            visitor.finish();
+        }//end scheduleLinks
+
+
+        /*
+         * Without fingerprints, the links are scheduled as soon as they are read. With fingerprints, the links of a
+         * section (li.section) are scheduled at the end of the section, if it changed; the other links at the end of
+         * the main region, if the page changed. The folders, pages and books are always crawled. The links to another
+         * page of the same module stay at the same depth.
+         */
+        private class PageVisitor implements LinkExtractor.TagVisitor{
+            final String pageUrl, page, module;
+            final int depth;
+            final RequestHandle handle;
+            final LinkExtractor.Region main = new LinkExtractor.Region( tag -> //
+                    "region-main".equals( tag.attr( "id" ) ) );
+            final LinkExtractor.Region section = new LinkExtractor.Region( tag -> tag.is( "li" ) && //
+                    tag.hasClass( "section" ) );
+            final List<String> pageLinks = new ArrayList<>(), sectionLinks = new ArrayList<>();
+            final Fingerprints.Digest pageDigest = new Fingerprints.Digest();
+            Fingerprints.Digest sectionDigest;
+            String sectionKey;
+            int sections = 0;
+
+
+            PageVisitor( String pageUrl, int depth, RequestHandle handle ){
+                this.pageUrl = pageUrl;
+                this.page = normaliseUrl( pageUrl );
+                this.module = moduleOf( pageUrl );
+                this.depth = depth;
+                this.handle = handle;
+            }
+
+
+            @Override
+            public boolean visit( LinkExtractor.Tag tag ){
+                if( main.update( tag ) ){
+                    boolean wasInSection = section.isInside();
+                    boolean inSection = section.update( tag );
+
+                    if( fingerprints != null ){
+                        pageDigest.update( tag );
+                        if( inSection ) sectionDigest.update( tag );
+                        if( !wasInSection && section.isInside() ){ // start of a section
+                            sectionKey = page + "#" + ( tag.attr( "id" ) != null ? tag.attr( "id" ) : sections );
+                            sectionDigest = new Fingerprints.Digest();
+                            sections++;
+                        }
+                    }
+
+                    if( tag.is( "a" ) && tag.attr( "href" ) != null ){
+                        String href = resolve( pageUrl, tag.attr( "href" ) );
+                        if( !isLinkOfInterest( href ) ){
+                            // not a resource
+                        }else if( fingerprints == null || CONTAINER_PATTERN.matcher( href ).matches() ){
+                            // the content of a folder can change without changing the page: it has its own
+                            // fingerprint
+                            schedule( href );
+                        }else{
+                            ( inSection ? sectionLinks : pageLinks ).add( href );
+                        }
+                    }
+
+                    if( fingerprints != null && wasInSection && !section.isInside() ){ // end of a section
+                        flush( sectionKey, sectionDigest, sectionLinks );
+                    }
+                }
+                return !main.isClosed() && ( handle == null || !handle.isCancelled() );
+            }//end visit
+
+
+            /* schedule the remaining links. Without a complete main region, there is no fingerprint */
+            void finish(){
+                if( fingerprints == null ) return;
+                if( section.isInside() ) sectionLinks.forEach( this::schedule );
+                if( main.isClosed() ){
+                    flush( page, pageDigest, pageLinks );
+                }else{
+                    pageLinks.forEach( this::schedule );
+                }
+            }//end finish
+
+
+            /* schedule the links if the fingerprint changed */
+            private void flush( String key, Fingerprints.Digest digest, List<String> links ){
+                if( fingerprints.update( key, digest ) ){
+                    links.forEach( this::schedule );
+                }else if( !links.isEmpty() ){
+                    logger.debug.printf( "unchanged: %s, skipping %d links%n", key, links.size() );
+                }
+                links.clear();
+            }//end flush
+
+
+            private void schedule( String href ){
+                Crawl.this.schedule( href, module != null && module.equals( moduleOf( href ) ) ? depth : depth + 1,
+                        null );
+            }
+        }//end class
+    }//end class
+
+    //----------------------------------------------------
+
     /*
      * Callable task which finds a resource given a starting url and then
      * calls the given consumer if anything is found.
      *
      * We need this class since the Cyberlearn platform uses redirects a lot
      * and loves to wrap resources into embedded viewers...
+     *
+     * Different viewers often lead to the same resource: a resource already downloaded during the run is not
+     * requested again. If two urls redirect to the same resource, only the first one reaching it downloads it: the
+     * other aborts the transfer.
      */
-    private class CallableResourceFinder implements Callable<NameValuePair> {
-        // the starting url: can lead either to the resource or to an embedded viewer (or to nothing)
+    private class CallableResourceFinder implements Callable<NameValuePair>, ResourceConsumer {
+        // the starting url: can lead either to the resource, to an embedded viewer, to a folder (or to nothing)
         String url;
         NameValuePair nameUrlPair; // the result
         CybeConnector.ResourceConsumer consumer; // the consumer of the resource (callback)
-
-
-        private CallableResourceFinder( String url, ResourceConsumer consumer ){
-            this.consumer = consumer;
+        Map<String, NameValuePair> claimed; // normalised final url => resource already handled during this run
+        Set<String> visiting = new HashSet<>(); // the urls fetched by this task, to detect loops
+        boolean metadataOnly; // use HEAD requests, see findCourseResources
+        RequestHandle handle = new RequestHandle(); // to abort the requests of this task
+        Crawl crawl; // the crawl scheduling the links found by this task
+        int depth; // the depth of the url in the crawl
+        String origin; // the link of the course page which led to the url (the url itself if it is such a link)
+
+
+        private CallableResourceFinder( Crawl crawl, String url, int depth, String origin ){
+            this.crawl = crawl;
+            this.consumer = crawl.consumer;
             this.url = url;
+            this.depth = depth;
+            this.origin = origin;
+            this.claimed = crawl.claimed;
+            this.metadataOnly = crawl.metadataOnly;
         }
 
 
         @Override
         public NameValuePair call() throws Exception{
-            findResource( this.url );
+            ResolutionIndex.Resolution resolution = index() != null && origin.equals( url ) ? index().get( url ) :
+                    null;
+            // if the link was resolved before, try the resource directly
+            if( resolution == null || !findIndexed( resolution ) ) findResource( this.url );
             return nameUrlPair;
         }
 
 
+        /*
+         * request the resource the link led to the last time. Return false if the resolution is outdated (error,
+         * redirect to another url or html page): it is then removed from the index
+         */
+        private boolean findIndexed( ResolutionIndex.Resolution resolution ) throws Exception{
+            final String expected = normaliseUrl( resolution.getFinalUrl() );
+            final boolean[] outdated = { false };
+
+            ResourceConsumer direct = new ResourceConsumer(){
+                @Override
+                public void accept( String type, String finalUrl, ResourceStream in ) throws Exception{
+                    if( !expected.equals( normaliseUrl( finalUrl ) ) || //
+                            type.equals( ContentType.TEXT_HTML.getMimeType() ) ){
+                        outdated[ 0 ] = true;
+                        in.abort();
+                    }else{
+                        CallableResourceFinder.this.accept( type, finalUrl, in );
+                    }
+                }
+
+
+                @Override
+                public boolean notModified( String finalUrl ) throws Exception{
+                    return CallableResourceFinder.this.notModified( finalUrl );
+                }
+            };
+            HttpErrorHandler onError = ( u, response ) -> outdated[ 0 ] = true;
+
+            if( metadataOnly ){
+                connector.headResource( resolution.getFinalUrl(), direct, onError, handle );
+            }else{
+                connector.getResource( resolution.getFinalUrl(), direct, onError, handle );
+            }
+
+            if( outdated[ 0 ] ){
+                logger.debug.printf( "outdated resolution of %s: %s%n", url, resolution.getFinalUrl() );
+                index().remove( url );
+                nameUrlPair = null;
+            }
+            return !outdated[ 0 ];
+        }//end findIndexed
+
+
         /* try to find the resource, doing potentially multiple http gets */
         private void findResource( String url ) throws Exception{
+            String normalised = normaliseUrl( url );
+            String key = ( metadataOnly ? "HEAD " : "" ) + normalised;
+            if( !visiting.add( key ) ) return; // a viewer leading to itself
+            if( claimed.containsKey( normalised ) ){
+                nameUrlPair = claimed.get( normalised ); // already downloaded during this run
+                return;
+            }
+
+            if( metadataOnly ){
+                connector.headResource( url, this, errorHandler(), handle );
+            }else{
+                connector.getResource( url, this, errorHandler(), handle );
+            }
+        }//end findResource
 
-            connector.getResource( url, ( type, finalUrl, in ) -> {
 
-                if( type.equals( ContentType.TEXT_HTML.getMimeType() ) ){
-                    // we have an html page => check for an embedded resource
-                    // the viewers always have a div.resourceworkaround element
-                    Document doc = Jsoup.parse( IOUtils.toString( in ) );
-                    Element link = doc.select( "div" + ".resourceworkaround a" ).first();
-                    String href = null;
+        @Override
+        public void accept( String type, String finalUrl, ResourceStream in ) throws Exception{
+
+            if( type.equals( ContentType.TEXT_HTML.getMimeType() ) && in.isHeadersOnly() ){
+                // metadata only: we need the content of the viewers anyway
+                connector.getResource( finalUrl, this, errorHandler(), handle );
+
+            }else if( type.equals( ContentType.TEXT_HTML.getMimeType() ) && //
+                    CONTAINER_PATTERN.matcher( finalUrl ).matches() ){
+                // a folder, a page or a book: crawl its content
+                crawl.scheduleLinks( readerOf( in ), finalUrl, depth, handle );
+
+            }else if( type.equals( ContentType.TEXT_HTML.getMimeType() ) ){
+                // we have an html page => check for an embedded resource
+                String href = findViewerLink( readerOf( in ) );
+
+                if( href != null ){
+                    // a new task, at the same depth: the viewer is only a hop to the resource
+                    crawl.schedule( resolve( finalUrl, href ), depth, origin );
+                } // else: neither a resource, nor a "viewer". Nothing to do
+
+
+            }else{  // we have a real resource (not html)
+                // get the name, probably the last part of the url (if it is done properly)
+                String name = nameFromUrl( finalUrl );
+                //logger.debug.printf( " --------- found: %s%n", name );
+                // store the result
+                nameUrlPair = new BasicNameValuePair( name, finalUrl );
+                record( finalUrl, type, ValidatorStore.Validators.of( in.getResponse() ) );
+                if( claimed.putIfAbsent( normaliseUrl( finalUrl ), nameUrlPair ) != null ){
+                    // another link led to the same resource: don't transfer it twice
+                    logger.debug.printf( "already handled: %s%n", finalUrl );
+                    in.abort();
+                    return;
+                }
+                // callback: call the client
+                consumer.accept( type, name, in );
+            }
+        }
 
-                    if( link != null ){
-                        // only one viewer, it is probably an embedded resource
-                        // check the link
-                        href = link.attr( "href" );
-                    }else{
-                        // try to find a pdf link in the subpage (inside iframe etc.)
-                        href = parseSubpage( doc );
-                    }
 
+        @Override
+        public boolean notModified( String finalUrl ) throws Exception{
+            // only real resources are conditional, so this is the end of the journey
+            String name = nameFromUrl( finalUrl );
+            nameUrlPair = new BasicNameValuePair( name, finalUrl );
+            if( index() != null && index().get( origin ) == null ) record( finalUrl, null, null );
+            return consumer.notModified( name );
+        }
 
-                    if( href != null ){
-                        //logger.debug.printf( "getting %s%n", href );
-                        findResource( href );
-                    } // else: neither a resource, nor a "viewer". Nothing to do
 
+        /* remember where the link of the course page led to, if it was not a direct link */
+        private void record( String finalUrl, String type, ValidatorStore.Validators validators ){
+            if( index() == null || normaliseUrl( finalUrl ).equals( normaliseUrl( origin ) ) ) return;
+            index().put( origin, new ResolutionIndex.Resolution( finalUrl, type, validators ) );
+        }
 
-                }else{  // we have a real resource (not html)
-                    // get the name, probably the last part of the url (if it is done properly)
-                    String name = CybeUtils.lastPartOfUrl( URLDecoder.decode( finalUrl, "UTF-8" ) );
-                    //logger.debug.printf( " --------- found: %s%n", name );
-                    // store the result
-                    nameUrlPair = new BasicNameValuePair( name, finalUrl );
-                    // callback: call the client
-                    consumer.accept( type, name, in );
-                }
-            }, errorHandler );
 
+        private ResolutionIndex index(){
+            return crawl.index;
         }
 
 
-        private String parseSubpage( Document doc ){
-            Element object;
+        private HttpErrorHandler errorHandler(){
+            return crawl.errorHandler;
+        }
+
 
-            // could be an embedded pdf (<object data="..." ... />)
-            object = doc.select( "object#resourceobject[data]" ).first();
-            if( object != null ) return object.attr( "data" );
+        private String nameFromUrl( String finalUrl ) throws UnsupportedEncodingException{
+            return CybeUtils.lastPartOfUrl( URLDecoder.decode( finalUrl, "UTF-8" ) );
+        }
 
-            // the embedded pdf could also be inside an iframe
-            object = doc.select( "iframe#resourceobject[src]" ).first();
-            if( object != null ) return object.attr( "src" );
 
+        /*
+         * find the link to the resource in a viewer page. The viewers always have a div.resourceworkaround element
+         * with the link: if there is only one viewer, it is probably an embedded resource. Else, try to find a pdf
+         * link in the subpage (inside an object or iframe).
+         */
+        private String findViewerLink( Reader reader ) throws IOException{
+            final String[] links = new String[ 3 ]; // div.resourceworkaround a, object#resourceobject, iframe#...
+            LinkExtractor.Region workaround = new LinkExtractor.Region( tag -> tag.is( "div" ) && //
+                    tag.hasClass( "resourceworkaround" ) );
+
+            LinkExtractor.scan( reader, tag -> {
+                if( workaround.update( tag ) && tag.is( "a" ) && tag.attr( "href" ) != null ){
+                    links[ 0 ] = tag.attr( "href" );
+                    return false; // this is the one, no need to read further
+                }
+                if( "resourceobject".equals( tag.attr( "id" ) ) ){
+                    // could be an embedded pdf (<object data="..." ... />)
+                    if( tag.is( "object" ) && links[ 1 ] == null ) links[ 1 ] = tag.attr( "data" );
+                    // the embedded pdf could also be inside an iframe
+                    if( tag.is( "iframe" ) && links[ 2 ] == null ) links[ 2 ] = tag.attr( "src" );
+                }
+                return true;
+            } );
 
+            for( String link : links ){
+                if( link != null ) return link;
+            }//end for
             return null;
-        }//end parseObjectTag
+        }//end findViewerLink
     }
 
 }//end class
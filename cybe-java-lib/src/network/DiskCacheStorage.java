@@ -0,0 +1,211 @@
+package network;
+
+import org.apache.commons.codec.digest.DigestUtils;
+import org.apache.http.client.cache.HttpCacheEntry;
+import org.apache.http.client.cache.HttpCacheStorage;
+import org.apache.http.client.cache.HttpCacheUpdateCallback;
+import org.apache.http.client.cache.Resource;
+
+import java.io.*;
+import java.util.*;
+
+/**
+ * A {@link HttpCacheStorage} keeping the cache entries on disk, so that they survive between two runs.
+ * <p/>
+ * Each entry is serialized in its own file (the bodies are handled by the {@link org.apache.http.impl.client.cache
+ * .FileResourceFactory} of the cache). The storage is bounded: when the number of entries or the total size on disk
+ * exceeds the limits, the least recently used entries are evicted. Entries older than the time-to-live are dropped
+ * when accessed.
+ */
+public class DiskCacheStorage implements HttpCacheStorage{
+
+    private static final String ENTRY_EXTENSION = ".entry";
+
+    private final File entriesDir;
+    private final int maxEntries;
+    private final long maxBytes;
+    private final long ttlMs;
+
+    // LRU index: entry filename -> size on disk (entry + body), in access order
+    private final LinkedHashMap<String, Long> index = new LinkedHashMap<>( 16, 0.75f, true );
+    private long totalBytes;
+
+
+    /**
+     * Create a storage, loading the entries already present in the directory.
+     *
+     * @param dir        the directory where to store the entries
+     * @param maxEntries the maximum number of entries
+     * @param maxBytes   the maximum size of the entries and their bodies, in bytes
+     * @param ttlMs      the maximum age of an entry, in milliseconds
+     * @throws IOException if the directory could not be created
+     */
+    public DiskCacheStorage( File dir, int maxEntries, long maxBytes, long ttlMs ) throws IOException{
+        this.entriesDir = dir;
+        this.maxEntries = maxEntries;
+        this.maxBytes = maxBytes;
+        this.ttlMs = ttlMs;
+
+        if( !dir.isDirectory() && !dir.mkdirs() ){
+            throw new IOException( "could not create the cache directory " + dir );
+        }
+        loadIndex();
+    }
+
+    /* *****************************************************************
+     * HttpCacheStorage
+     * ****************************************************************/
+
+
+    @Override
+    public synchronized void putEntry( String key, HttpCacheEntry entry ) throws IOException{
+        String name = entryName( key );
+        HttpCacheEntry old = index.containsKey( name ) ? readEntry( name ) : null;
+
+        long bodySize = entry.getResource() != null ? entry.getResource().length() : 0;
+        File file = new File( entriesDir, name );
+        try( ObjectOutputStream out = new ObjectOutputStream( new BufferedOutputStream( //
+                new FileOutputStream( file ) ) ) ){
+            out.writeLong( bodySize );
+            out.writeObject( entry );
+        }
+
+        // the body of the old entry is not referenced anymore
+        if( old != null && old != entry ) dispose( old );
+        forget( name );
+        index.put( name, file.length() + bodySize );
+        totalBytes += file.length() + bodySize;
+
+        evict();
+    }//end putEntry
+
+
+    @Override
+    public synchronized HttpCacheEntry getEntry( String key ) throws IOException{
+        String name = entryName( key );
+        if( index.get( name ) == null ) return null; // get (not containsKey) updates the access order
+
+        HttpCacheEntry entry = readEntry( name );
+        if( entry == null || isExpired( entry ) ){
+            removeEntry( key );
+            return null;
+        }
+
+        // keep the lru order across runs
+        new File( entriesDir, name ).setLastModified( System.currentTimeMillis() );
+        return entry;
+    }//end getEntry
+
+
+    @Override
+    public synchronized void removeEntry( String key ) throws IOException{
+        String name = entryName( key );
+        if( !index.containsKey( name ) ) return;
+
+        HttpCacheEntry entry = readEntry( name );
+        if( entry != null ) dispose( entry );
+        forget( name );
+        new File( entriesDir, name ).delete();
+    }//end removeEntry
+
+
+    @Override
+    public synchronized void updateEntry( String key, HttpCacheUpdateCallback callback ) throws IOException{
+        String name = entryName( key );
+        HttpCacheEntry existing = index.containsKey( name ) ? readEntry( name ) : null;
+        HttpCacheEntry updated = callback.update( existing );
+
+        if( updated == null ){
+            removeEntry( key );
+        }else if( updated != existing ){
+            putEntry( key, updated );
+        }
+    }//end updateEntry
+
+    //----------------------------------------------------
+
+
+    /** @return the number of entries currently stored */
+    public synchronized int size(){
+        return index.size();
+    }
+
+
+    /** @return the size of the entries and their bodies, in bytes */
+    public synchronized long sizeInBytes(){
+        return totalBytes;
+    }
+
+    /* *****************************************************************
+     * private utils
+     * ****************************************************************/
+
+
+    /* load the existing entries, the least recently used first */
+    private void loadIndex(){
+        File[] files = entriesDir.listFiles( f -> f.getName().endsWith( ENTRY_EXTENSION ) );
+        if( files == null ) return;
+
+        Arrays.sort( files, ( f1, f2 ) -> Long.compare( f1.lastModified(), f2.lastModified() ) );
+        for( File file : files ){
+            try( ObjectInputStream in = new ObjectInputStream( new FileInputStream( file ) ) ){
+                long size = file.length() + in.readLong();
+                index.put( file.getName(), size );
+                totalBytes += size;
+            }catch( IOException e ){
+                file.delete(); // corrupted
+            }
+        }//end for
+
+        evict();
+    }//end loadIndex
+
+
+    /* remove the least recently used entries until the limits are respected */
+    private void evict(){
+        Iterator<Map.Entry<String, Long>> iterator = index.entrySet().iterator();
+        while( iterator.hasNext() && ( index.size() > maxEntries || totalBytes > maxBytes ) ){
+            Map.Entry<String, Long> eldest = iterator.next();
+            HttpCacheEntry entry = readEntry( eldest.getKey() );
+            if( entry != null ) dispose( entry );
+            new File( entriesDir, eldest.getKey() ).delete();
+            totalBytes -= eldest.getValue();
+            iterator.remove();
+        }//end while
+    }//end evict
+
+
+    private void forget( String name ){
+        Long size = index.remove( name );
+        if( size != null ) totalBytes -= size;
+    }
+
+
+    private HttpCacheEntry readEntry( String name ){
+        File file = new File( entriesDir, name );
+        try( ObjectInputStream in = new ObjectInputStream( new BufferedInputStream( //
+                new FileInputStream( file ) ) ) ){
+            in.readLong(); // body size
+            return ( HttpCacheEntry ) in.readObject();
+        }catch( IOException | ClassNotFoundException | ClassCastException e ){
+            return null;
+        }
+    }//end readEntry
+
+
+    private boolean isExpired( HttpCacheEntry entry ){
+        Date date = entry.getResponseDate();
+        return date == null || System.currentTimeMillis() - date.getTime() > ttlMs;
+    }
+
+
+    private static void dispose( HttpCacheEntry entry ){
+        Resource resource = entry.getResource();
+        if( resource != null ) resource.dispose();
+    }
+
+
+    private static String entryName( String key ){
+        return DigestUtils.shaHex( key ) + ENTRY_EXTENSION;
+    }
+}//end class
@@ -0,0 +1,146 @@
+package network;
+
+import java.lang.reflect.Method;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * How the {@link CybeParser} runs its resource finders.
+ * <p/>
+ * The finders spend most of their time waiting for the platform, so the number of cores is a poor limit: what
+ * matters is the number of connections the platform accepts. {@link #WORK_STEALING} is the historical behavior,
+ * {@link #FIXED} uses one platform thread per connection and {@link #THREAD_PER_TASK} starts a (virtual, if the
+ * jvm supports them) thread for each finder, at most one running finder per connection.
+ */
+public enum ExecutorStrategy{
+
+    /** A work-stealing pool, sized to the number of cores. */
+    WORK_STEALING,
+    /** A fixed pool of platform threads, one per connection to the platform. */
+    FIXED,
+    /**
+     * One virtual thread per task (a new platform thread if the jvm has no virtual threads), the number of running
+     * tasks being limited by a semaphore with one permit per connection to the platform.
+     */
+    THREAD_PER_TASK;
+
+
+    /**
+     * @param name the name of a strategy, case insensitive, with dashes or underscores (e.g. "thread-per-task")
+     * @return the strategy
+     * @throws IllegalArgumentException if there is no such strategy
+     */
+    public static ExecutorStrategy fromString( String name ){
+        return valueOf( name.trim().toUpperCase().replace( '-', '_' ) );
+    }
+
+
+    /**
+     * Create an executor following this strategy. The threads are daemons.
+     *
+     * @param limit the maximum number of tasks running at the same time, usually the maximum number of connections
+     *              to the platform (see {@link ConnectorConfig#getMaxToTarget()}). Ignored by {@link
+     *              #WORK_STEALING}.
+     * @return the executor
+     */
+    public ExecutorService newExecutor( int limit ){
+        switch( this ){
+            case FIXED:
+                return Executors.newFixedThreadPool( limit, daemonFactory( "cybe-finder-" ) );
+            case THREAD_PER_TASK:
+                return new BoundedExecutor( newThreadPerTaskExecutor(), limit );
+            default:
+                return Executors.newWorkStealingPool();
+        }
+    }//end newExecutor
+
+    /* *****************************************************************
+     * private utils
+     * ****************************************************************/
+
+
+    /* Executors.newVirtualThreadPerTaskExecutor() on java 21+, a cached pool otherwise */
+    private static ExecutorService newThreadPerTaskExecutor(){
+        try{
+            Method method = Executors.class.getMethod( "newVirtualThreadPerTaskExecutor" );
+            return ( ExecutorService ) method.invoke( null );
+        }catch( ReflectiveOperationException e ){
+            return Executors.newCachedThreadPool( daemonFactory( "cybe-finder-" ) );
+        }
+    }//end newThreadPerTaskExecutor
+
+
+    private static ThreadFactory daemonFactory( String prefix ){
+        AtomicInteger count = new AtomicInteger();
+        return r -> {
+            Thread thread = new Thread( r, prefix + count.incrementAndGet() );
+            thread.setDaemon( true );
+            return thread;
+        };
+    }//end daemonFactory
+
+
+    /*
+     * An executor running each task in its own thread once a permit is available. The submitter never blocks: the
+     * task thread waits for the permit, which is cheap with virtual threads.
+     */
+    private static class BoundedExecutor extends AbstractExecutorService{
+        private final ExecutorService delegate;
+        private final Semaphore permits;
+
+
+        BoundedExecutor( ExecutorService delegate, int limit ){
+            this.delegate = delegate;
+            this.permits = new Semaphore( limit, true );
+        }
+
+
+        @Override
+        public void execute( Runnable command ){
+            delegate.execute( () -> {
+                try{
+                    permits.acquire();
+                }catch( InterruptedException e ){
+                    Thread.currentThread().interrupt();
+                    return; // shutting down
+                }
+                try{
+                    command.run();
+                }finally{
+                    permits.release();
+                }
+            } );
+        }//end execute
+
+
+        @Override
+        public void shutdown(){
+            delegate.shutdown();
+        }
+
+
+        @Override
+        public List<Runnable> shutdownNow(){
+            return delegate.shutdownNow();
+        }
+
+
+        @Override
+        public boolean isShutdown(){
+            return delegate.isShutdown();
+        }
+
+
+        @Override
+        public boolean isTerminated(){
+            return delegate.isTerminated();
+        }
+
+
+        @Override
+        public boolean awaitTermination( long timeout, TimeUnit unit ) throws InterruptedException{
+            return delegate.awaitTermination( timeout, unit );
+        }
+    }//end class
+}//end class
@@ -0,0 +1,130 @@
+package network;
+
+import org.apache.commons.codec.binary.Hex;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Pattern;
+
+/**
+ * The fingerprints of the pages crawled by the {@link CybeParser}: a hash of the main region of each page (course
+ * page, folder, ...) and of each section of the course page.
+ * <p/>
+ * Given the fingerprints of the previous run, the parser does not resolve the links of the sections which did not
+ * change. The folders are still fetched, since their content can change independently: their own fingerprint is
+ * checked instead. Only the markup is hashed (tags and attributes, not the text), after removing the session-dependent
+ * parts. Note that a resource replaced on the server without changing its link will not be seen: use an empty
+ * instance (see {@link #Fingerprints()}) to force a full crawl.
+ * <p/>
+ * The fingerprints should only be kept if the run completed without error, see {@link #isComplete()}. Otherwise,
+ * the resources which could not be fetched would be skipped the next time. This class is thread-safe.
+ */
+public class Fingerprints{
+
+    private static final Pattern SESSKEY_PATTERN = Pattern.compile( "sesskey=\\w+" );
+
+    private final Map<String, String> previous;
+    private final Map<String, String> current = new ConcurrentHashMap<>();
+    private volatile boolean complete = true;
+
+
+    /** No previous fingerprints: everything is considered changed. */
+    public Fingerprints(){
+        this( null );
+    }
+
+
+    /** @param previous the fingerprints of the previous run (see {@link #getCurrent()}), or null */
+    public Fingerprints( Map<String, String> previous ){
+        this.previous = previous != null ? new HashMap<>( previous ) : Collections.emptyMap();
+    }
+
+    //----------------------------------------------------
+
+
+    /** @return the fingerprints computed during this run */
+    public Map<String, String> getCurrent(){
+        return new TreeMap<>( current );
+    }
+
+
+    /**
+     * @return true if no error was reported during the run, i.e. the fingerprints can be stored. A cancelled or
+     * failed task, or an http error, makes the run incomplete.
+     */
+    public boolean isComplete(){
+        return complete;
+    }
+
+
+    /** Mark the run as incomplete, e.g. because a resource could not be saved. */
+    public void setIncomplete(){
+        complete = false;
+    }
+
+
+    /** @return true if at least one page or section changed since the previous run */
+    public boolean hasChanges(){
+        return current.entrySet().stream().anyMatch( e -> !e.getValue().equals( previous.get( e.getKey() ) ) );
+    }
+
+
+    /**
+     * @param key the page or section
+     * @return true if its fingerprint was computed during this run and did not change since the previous one
+     */
+    public boolean isUnchanged( String key ){
+        String hash = current.get( key );
+        return hash != null && hash.equals( previous.get( key ) );
+    }
+
+    //----------------------------------------------------
+
+
+    /* store a fingerprint, returning true if it changed since the previous run */
+    boolean update( String key, Digest digest ){
+        String hash = digest.hex();
+        current.put( key, hash );
+        return !hash.equals( previous.get( key ) );
+    }
+
+
+    /* the hash of a sequence of tags */
+    static class Digest{
+        private final MessageDigest md;
+
+
+        Digest(){
+            try{
+                md = MessageDigest.getInstance( "SHA-1" );
+            }catch( NoSuchAlgorithmException e ){
+                throw new IllegalStateException( e ); // every jvm has sha-1
+            }
+        }
+
+
+        /* add a tag in a canonical form: name and sorted attributes, without the session keys */
+        void update( LinkExtractor.Tag tag ){
+            if( "sesskey".equals( tag.attr( "name" ) ) ) return; // <input type="hidden" name="sesskey" ...>
+            StringBuilder builder = new StringBuilder( tag.isClosing() ? "</" : "<" ).append( tag.getName() );
+            new TreeMap<>( tag.getAttributes() ).forEach( ( name, value ) -> builder.append( ' ' ).append( name ) //
+                    .append( '=' ).append( SESSKEY_PATTERN.matcher( value ).replaceAll( "sesskey=" ) ) );
+            md.update( builder.append( '>' ).toString().getBytes( StandardCharsets.UTF_8 ) );
+        }
+
+
+        /* add a value, e.g. the url and date of a file */
+        void update( String value ){
+            md.update( value.getBytes( StandardCharsets.UTF_8 ) );
+            md.update( ( byte ) 0 );
+        }
+
+
+        String hex(){
+            return Hex.encodeHexString( md.digest() );
+        }
+    }//end class
+}//end class
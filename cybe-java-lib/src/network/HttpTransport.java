@@ -0,0 +1,39 @@
+package network;
+
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.client.methods.HttpUriRequest;
+import org.apache.http.protocol.HttpContext;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * The layer of a {@link CybeConnector} which actually executes the requests. All the transports of a connector share
+ * its cookie store, so the authentication state is the same whatever the transport used.
+ * <p/>
+ * In both cases, the caller is responsible for closing the response.
+ */
+public interface HttpTransport extends Closeable{
+
+    /**
+     * Execute the request, blocking until the response headers are received.
+     *
+     * @param request the request
+     * @param context the context
+     * @return the response
+     * @throws IOException
+     */
+    CloseableHttpResponse execute( HttpUriRequest request, HttpContext context ) throws IOException;
+
+
+    /**
+     * Execute the request without blocking the caller, e.g. on another thread. The future completes once the
+     * response headers are received.
+     *
+     * @param request the request
+     * @param context the context
+     * @return the future response. It completes exceptionally if the request failed.
+     */
+    CompletableFuture<CloseableHttpResponse> executeAsync( HttpUriRequest request, HttpContext context );
+}//end interface
@@ -0,0 +1,392 @@
+package network;
+
+import org.jsoup.parser.Parser;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.Predicate;
+
+/**
+ * A minimal streaming html tokenizer, used to extract links from the platform pages without building a DOM.
+ * <p/>
+ * The tags are given to a {@link TagVisitor} as they are read, so the caller can act on a link while the rest of the
+ * page is still on its way, and stop reading as soon as it found what it was looking for. Comments, doctypes and the
+ * content of the {@code script} and {@code style} elements are skipped. The attribute values are unescaped.
+ * <p/>
+ * Example, the equivalent of the {@code #region-main a[href]} selector:
+ * <pre>
+ * Region main = new Region( tag -> "region-main".equals( tag.attr( "id" ) ) );
+ * LinkExtractor.scan( reader, tag -> {
+ *     if( main.update( tag ) && tag.is( "a" ) && tag.attr( "href" ) != null ) System.out.println( tag.attr( "href" ) );
+ *     return !main.isClosed(); // stop at the end of the region
+ * } );
+ * </pre>
+ */
+public class LinkExtractor{
+
+    private static final int BUFFER_SIZE = 8192;
+
+    private final Reader reader;
+    private final char[] buffer = new char[ BUFFER_SIZE ];
+    private int position = 0, limit = 0;
+    private int pushedBack = -1;
+
+
+    /** Called for each start or end tag. */
+    @FunctionalInterface
+    public interface TagVisitor{
+        /**
+         * @param tag the tag
+         * @return true to continue, false to stop reading
+         */
+        boolean visit( Tag tag );
+    }
+
+
+    private LinkExtractor( Reader reader ){
+        this.reader = reader;
+    }
+
+
+    /**
+     * Read the html from the reader, calling the visitor for each tag. The reader is not closed.
+     *
+     * @param reader  the html
+     * @param visitor the visitor
+     * @throws IOException
+     */
+    public static void scan( Reader reader, TagVisitor visitor ) throws IOException{
+        new LinkExtractor( reader ).run( visitor );
+    }
+
+    /* *****************************************************************
+     * tokenizer
+     * ****************************************************************/
+
+
+    private void run( TagVisitor visitor ) throws IOException{
+        int c;
+        while( ( c = next() ) >= 0 ){
+            if( c != '<' ) continue; // text
+
+            c = next();
+            if( c == '!' ){
+                skipCommentOrDeclaration();
+
+            }else if( c == '?' ){
+                skipTo( '>' );
+
+            }else if( c == '/' ){
+                Tag tag = readTag( next(), true );
+                if( tag != null && !visitor.visit( tag ) ) return;
+
+            }else if( isLetter( c ) ){
+                Tag tag = readTag( c, false );
+                if( !visitor.visit( tag ) ) return;
+                if( ( tag.is( "script" ) || tag.is( "style" ) ) && !tag.isSelfClosing() ) skipRawText( tag.getName() );
+
+            }else{
+                pushBack( c ); // a '<' in the text
+            }
+        }//end while
+    }//end run
+
+
+    /* read a tag, the '<' (and '/') being already consumed. Return null if this is not a tag after all */
+    private Tag readTag( int first, boolean closing ) throws IOException{
+        if( !isLetter( first ) ){
+            skipTo( '>' ); // e.g. "</ >", just ignore it
+            return null;
+        }
+
+        String name = readName( first );
+        Map<String, String> attributes = new HashMap<>();
+        boolean selfClosing = false;
+        int c;
+
+        while( ( c = skipWhitespaces() ) >= 0 && c != '>' ){
+            if( c == '/' ){
+                selfClosing = true;
+                continue;
+            }
+            selfClosing = false;
+
+            String attribute = readName( c );
+            String value = "";
+            c = skipWhitespaces();
+            if( c == '=' ){
+                value = readValue( skipWhitespaces() );
+            }else{
+                pushBack( c );
+            }
+            if( value.indexOf( '&' ) >= 0 ) value = Parser.unescapeEntities( value, true );
+            attributes.putIfAbsent( attribute, value );
+        }//end while
+
+        return new Tag( name, closing, selfClosing, attributes );
+    }//end readTag
+
+
+    /* read a tag or attribute name (lowercase), starting with the given char */
+    private String readName( int first ) throws IOException{
+        StringBuilder builder = new StringBuilder();
+        int c = first;
+        while( c >= 0 && !Character.isWhitespace( c ) && c != '>' && c != '/' && c != '=' ){
+            builder.append( Character.toLowerCase( ( char ) c ) );
+            c = next();
+        }//end while
+        pushBack( c );
+        return builder.toString();
+    }//end readName
+
+
+    /* read an attribute value, quoted or not */
+    private String readValue( int first ) throws IOException{
+        StringBuilder builder = new StringBuilder();
+        int c;
+        if( first == '"' || first == '\'' ){
+            while( ( c = next() ) >= 0 && c != first ){
+                builder.append( ( char ) c );
+            }//end while
+        }else{
+            c = first;
+            while( c >= 0 && !Character.isWhitespace( c ) && c != '>' ){
+                builder.append( ( char ) c );
+                c = next();
+            }//end while
+            pushBack( c );
+        }
+        return builder.toString();
+    }//end readValue
+
+
+    /* skip <!-- ... --> or <!DOCTYPE ...>, the "<!" being already consumed */
+    private void skipCommentOrDeclaration() throws IOException{
+        int c = next();
+        if( c != '-' ){
+            pushBack( c );
+            skipTo( '>' );
+            return;
+        }
+        c = next();
+        if( c != '-' ){
+            pushBack( c );
+            skipTo( '>' );
+            return;
+        }
+
+        int dashes = 0;
+        while( ( c = next() ) >= 0 ){
+            if( c == '>' && dashes >= 2 ) return;
+            dashes = c == '-' ? dashes + 1 : 0;
+        }//end while
+    }//end skipCommentOrDeclaration
+
+
+    /* skip the content of a script or style element, until its end tag (consumed too) */
+    private void skipRawText( String name ) throws IOException{
+        int c;
+        while( ( c = next() ) >= 0 ){
+            if( c != '<' ) continue;
+            if( ( c = next() ) != '/' ){
+                pushBack( c );
+                continue;
+            }
+
+            int i = 0;
+            while( i < name.length() && ( c = next() ) >= 0 && Character.toLowerCase( c ) == name.charAt( i ) ){
+                i++;
+            }//end while
+            if( i == name.length() ){
+                skipTo( '>' );
+                return;
+            }
+            pushBack( c );
+        }//end while
+    }//end skipRawText
+
+
+    private void skipTo( char end ) throws IOException{
+        int c;
+        while( ( c = next() ) >= 0 && c != end ){
+            // skip
+        }//end while
+    }
+
+
+    /* skip the whitespaces and return the next char */
+    private int skipWhitespaces() throws IOException{
+        int c;
+        while( ( c = next() ) >= 0 && Character.isWhitespace( c ) ){
+            // skip
+        }//end while
+        return c;
+    }
+
+
+    private static boolean isLetter( int c ){
+        return ( c >= 'a' && c <= 'z' ) || ( c >= 'A' && c <= 'Z' );
+    }
+
+
+    private int next() throws IOException{
+        if( pushedBack >= 0 ){
+            int c = pushedBack;
+            pushedBack = -1;
+            return c;
+        }
+        if( position == limit ){
+            limit = reader.read( buffer, 0, buffer.length );
+            position = 0;
+            if( limit <= 0 ){
+                limit = 0;
+                return -1;
+            }
+        }
+        return buffer[ position++ ];
+    }//end next
+
+
+    private void pushBack( int c ){
+        if( c >= 0 ) pushedBack = c;
+    }
+
+    /* *****************************************************************
+     * tags and regions
+     * ****************************************************************/
+
+
+    /** A start or end tag. */
+    public static class Tag{
+        private final String name;
+        private final boolean closing, selfClosing;
+        private final Map<String, String> attributes;
+
+
+        private Tag( String name, boolean closing, boolean selfClosing, Map<String, String> attributes ){
+            this.name = name;
+            this.closing = closing;
+            this.selfClosing = selfClosing;
+            this.attributes = attributes;
+        }
+
+
+        /** @return the name of the tag, in lowercase */
+        public String getName(){
+            return name;
+        }
+
+
+        /** @return true if this is a start tag with the given name (lowercase) */
+        public boolean is( String name ){
+            return !closing && this.name.equals( name );
+        }
+
+
+        /** @return true if this is an end tag ({@code </name>}) */
+        public boolean isClosing(){
+            return closing;
+        }
+
+
+        /** @return true if this is a start tag ending with "/>" */
+        public boolean isSelfClosing(){
+            return selfClosing;
+        }
+
+
+        /**
+         * @param name the name of the attribute (lowercase)
+         * @return its unescaped value, or null if the tag does not have this attribute
+         */
+        public String attr( String name ){
+            return attributes.get( name );
+        }
+
+
+        /** @return the attributes of the tag (lowercase names, unescaped values), read-only */
+        public Map<String, String> getAttributes(){
+            return Collections.unmodifiableMap( attributes );
+        }
+
+
+        /** @return true if the class attribute of the tag contains the given class */
+        public boolean hasClass( String className ){
+            String classes = attributes.get( "class" );
+            if( classes == null ) return false;
+            for( String c : classes.split( "\\s+" ) ){
+                if( c.equals( className ) ) return true;
+            }//end for
+            return false;
+        }
+
+
+        @Override
+        public String toString(){
+            return ( closing ? "</" : "<" ) + name + ( closing ? "" : " " + attributes ) + ">";
+        }
+    }//end class
+
+
+    /**
+     * Keep track of the elements matching a predicate, e.g. {@code div.resourceworkaround}, so that the visitor knows
+     * if a tag is inside one of them. The end of an element is found by counting the start and end tags with the
+     * same name, so the region must not be a void element (like {@code img}).
+     */
+    public static class Region{
+        private final Predicate<Tag> start;
+        private String name;
+        private int depth = 0;
+        private boolean closed = false;
+
+
+        /** @param start the predicate which matches the start tag of the region */
+        public Region( Predicate<Tag> start ){
+            this.start = start;
+        }
+
+
+        /**
+         * Update the region with the next tag. This must be called for every tag.
+         *
+         * @param tag the tag
+         * @return true if the tag is inside the region (its own start and end tags are not)
+         */
+        public boolean update( Tag tag ){
+            if( depth == 0 ){
+                if( !tag.isClosing() && !tag.isSelfClosing() && start.test( tag ) ){
+                    name = tag.getName();
+                    depth = 1;
+                }
+                return false;
+            }
+
+            if( tag.getName().equals( name ) ){
+                if( tag.isClosing() ){
+                    if( --depth == 0 ){
+                        closed = true;
+                        return false;
+                    }
+                }else if( !tag.isSelfClosing() ){
+                    depth++;
+                }
+            }
+            return true;
+        }//end update
+
+
+        /** @return true if the last tag was inside the region */
+        public boolean isInside(){
+            return depth > 0;
+        }
+
+
+        /** @return true if the region was closed at least once */
+        public boolean isClosed(){
+            return closed;
+        }
+    }//end class
+}//end class
@@ -0,0 +1,212 @@
+package network;
+
+import com.google.gson.annotations.SerializedName;
+import gson.DoNotSerialize;
+import gson.GsonContainable;
+import gson.GsonUtils;
+import utils.CybeUtils;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * An unfinished download. While a resource is downloaded, its content goes to a "{@code <name>.part}" file, next to
+ * a "{@code <name>.part.meta}" file holding the url, the validators (ETag, Last-Modified), the total length and the
+ * number of bytes safely written so far (the offset).
+ * <p/>
+ * If the download is interrupted, the next request for the same url can resume at the offset, using the
+ * Range/If-Range headers (see {@link CybeConnector#addPartFile(PartFile)}). Once the download is complete, the part
+ * file is renamed to its final name and the meta file is deleted.
+ */
+public class PartFile implements GsonContainable{
+
+    public static final String PART_EXTENSION = ".part";
+    public static final String META_EXTENSION = ".part.meta";
+
+    @SerializedName( "url" )
+    private String url;
+
+    @SerializedName( "etag" )
+    private String etag;
+
+    @SerializedName( "last_modified" )
+    private String lastModified;
+
+    @SerializedName( "length" )
+    private long length = -1;
+
+    @SerializedName( "offset" )
+    private long offset;
+
+    // -- not serialized
+    @DoNotSerialize
+    private File target;
+
+    //----------------------------------------------------
+
+
+    /* for gson */
+    PartFile(){
+    }
+
+
+    private PartFile( File target ){
+        this.target = target;
+    }
+
+
+    /**
+     * Get the part file of the given target. If a meta file exists, its content is loaded.
+     *
+     * @param target the final file
+     * @return the part file (never null)
+     */
+    public static PartFile of( File target ){
+        File meta = new File( target.getPath() + META_EXTENSION );
+        PartFile part = null;
+        if( meta.exists() ) part = ( PartFile ) GsonUtils.getJsonFromFile( meta.getPath(), new PartFile() );
+        if( part == null ) part = new PartFile();
+        part.target = target;
+        return part;
+    }//end of
+
+
+    /**
+     * Find the unfinished downloads in a directory.
+     *
+     * @param dir the directory
+     * @return the part files with a valid meta file
+     */
+    public static List<PartFile> findAll( File dir ){
+        List<PartFile> parts = new ArrayList<>();
+        File[] metas = dir.listFiles( f -> f.isFile() && f.getName().endsWith( META_EXTENSION ) );
+        if( metas == null ) return parts;
+
+        for( File meta : metas ){
+            String path = meta.getPath();
+            PartFile part = of( new File( path.substring( 0, path.length() - META_EXTENSION.length() ) ) );
+            if( part.url != null ) parts.add( part );
+        }//end for
+        return parts;
+    }//end findAll
+
+
+    /**
+     * @param filename a filename
+     * @return true if the file is a part or a meta file, i.e. not a finished resource
+     */
+    public static boolean isPartFile( String filename ){
+        return filename.endsWith( PART_EXTENSION ) || filename.endsWith( META_EXTENSION );
+    }
+
+    //----------------------------------------------------
+
+
+    /**
+     * Start the download from scratch: reset the offset and store the infos about the resource.
+     *
+     * @param url          the url of the resource
+     * @param etag         its ETag, if any
+     * @param lastModified its Last-Modified date, if any
+     * @param length       its total length, or -1 if unknown
+     */
+    public void restart( String url, String etag, String lastModified, long length ){
+        this.url = url;
+        this.etag = etag;
+        this.lastModified = lastModified;
+        this.length = length;
+        this.offset = 0;
+        save();
+    }//end restart
+
+
+    /**
+     * Persist the number of bytes safely written. The data must have been flushed to the disk before.
+     *
+     * @param offset the offset
+     */
+    public void checkpoint( long offset ){
+        this.offset = offset;
+        save();
+    }
+
+
+    /**
+     * @return true if the download can be resumed, i.e. some bytes were already written and a validator is
+     * available for the If-Range header.
+     */
+    public boolean canResume(){
+        return url != null && getOffset() > 0 && getIfRangeValidator() != null && getMetaFile().exists();
+    }
+
+
+    /**
+     * @return the validator to use in the If-Range header: the ETag if it is a strong one, the Last-Modified date
+     * otherwise. Null if none is available.
+     */
+    public String getIfRangeValidator(){
+        if( etag != null && !etag.startsWith( "W/" ) ) return etag;
+        return lastModified;
+    }
+
+
+    /** @return the number of bytes safely written so far */
+    public long getOffset(){
+        File part = getPartFile();
+        return part.exists() ? Math.min( offset, part.length() ) : 0;
+    }
+
+
+    /** Delete the meta file, once the download is complete. */
+    public void deleteMeta(){
+        getMetaFile().delete();
+    }
+
+    //----------------------------------------------------
+
+
+    public String getUrl(){
+        return url;
+    }
+
+
+    public String getEtag(){
+        return etag;
+    }
+
+
+    public String getLastModified(){
+        return lastModified;
+    }
+
+
+    /** @return the total length of the resource, or -1 if unknown */
+    public long getLength(){
+        return length;
+    }
+
+
+    /** @return the final file */
+    public File getTarget(){
+        return target;
+    }
+
+
+    /** @return the file holding the content downloaded so far */
+    public File getPartFile(){
+        return new File( target.getPath() + PART_EXTENSION );
+    }
+
+
+    /** @return the file holding the infos about the download */
+    public File getMetaFile(){
+        return new File( target.getPath() + META_EXTENSION );
+    }
+
+
+    /* replace the meta file atomically: a crash during a checkpoint leaves the previous offset */
+    private void save(){
+        CybeUtils.writeJsonFile( getMetaFile().getPath(), this );
+    }
+}//end class
@@ -0,0 +1,45 @@
+package network;
+
+import org.apache.http.client.methods.HttpUriRequest;
+
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * A handle to cancel the requests made on behalf of a task, e.g. when it takes too long. Cancelling a handle aborts
+ * the requests currently executed (the blocked threads get an {@link java.io.IOException}) and all the requests
+ * attached afterwards.
+ * <p/>
+ * See {@link CybeConnector#getResource(String, network.CybeConnector.ResourceConsumer,
+ * network.CybeConnector.HttpErrorHandler, RequestHandle)}.
+ */
+public class RequestHandle{
+
+    private final Set<HttpUriRequest> requests = ConcurrentHashMap.newKeySet();
+    private volatile boolean cancelled = false;
+
+
+    /** Abort the current requests and the next ones. */
+    public void cancel(){
+        cancelled = true;
+        requests.forEach( HttpUriRequest::abort );
+    }
+
+
+    public boolean isCancelled(){
+        return cancelled;
+    }
+
+
+    /* the request is about to be executed */
+    void attach( HttpUriRequest request ){
+        requests.add( request );
+        if( cancelled ) request.abort();
+    }
+
+
+    /* the request is over */
+    void detach( HttpUriRequest request ){
+        requests.remove( request );
+    }
+}//end class
@@ -0,0 +1,171 @@
+package network;
+
+import com.google.gson.annotations.SerializedName;
+import gson.DoNotSerialize;
+import gson.GsonContainable;
+import gson.GsonUtils;
+import utils.CybeUtils;
+
+import java.io.File;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Persistent index of the links of a course page, with the resource they lead to.
+ * <p/>
+ * Finding a resource from a course link usually takes two or three requests: the link (e.g. {@code
+ * mod/resource/view.php?id=...}), the viewer page and finally the resource itself ({@code pluginfile.php/...}). The
+ * index remembers the final url, the mime type and the validators of each resolution, so that the next time the
+ * {@link CybeParser} can request the resource directly. If it fails (error or redirect to another url), the entry
+ * is dropped and the link is resolved again.
+ * <p/>
+ * There is one index per course, usually stored next to the local config. It can be safely used from multiple
+ * threads.
+ */
+public class ResolutionIndex implements GsonContainable{
+
+    public static final String DEFAULT_FILENAME = ".cybe.index";
+
+    @SerializedName( "resolutions" )
+    private Map<String, Resolution> resolutions = new ConcurrentHashMap<>();
+
+    // -- not serialized
+    @DoNotSerialize
+    private String filepath;
+
+    @DoNotSerialize
+    private volatile boolean modified;
+
+    //----------------------------------------------------
+
+
+    /**
+     * Where a link leads to.
+     */
+    public static class Resolution{
+        @SerializedName( "final_url" )
+        private String finalUrl;
+
+        @SerializedName( "mime_type" )
+        private String mimeType;
+
+        @SerializedName( "validators" )
+        private ValidatorStore.Validators validators;
+
+
+        public Resolution(){
+        }
+
+
+        /**
+         * @param finalUrl   the url of the resource, after the viewers and the redirects
+         * @param mimeType   its mime type
+         * @param validators its validators, or null
+         */
+        public Resolution( String finalUrl, String mimeType, ValidatorStore.Validators validators ){
+            this.finalUrl = finalUrl;
+            this.mimeType = mimeType;
+            this.validators = validators;
+        }
+
+
+        public String getFinalUrl(){
+            return finalUrl;
+        }
+
+
+        public String getMimeType(){
+            return mimeType;
+        }
+
+
+        /** @return the validators of the resource when it was resolved, or null */
+        public ValidatorStore.Validators getValidators(){
+            return validators;
+        }
+    }
+
+    //----------------------------------------------------
+
+
+    /** Create an empty index, which cannot be saved. See {@link #loadInstance(String)}. */
+    public ResolutionIndex(){
+    }
+
+
+    /**
+     * Load the index from the given file. If the file does not exist or can't be read, an empty index is returned.
+     *
+     * @param path the path to the file
+     * @return the index
+     */
+    public static ResolutionIndex loadInstance( String path ){
+        ResolutionIndex index = null;
+        if( new File( path ).exists() ){
+            index = ( ResolutionIndex ) GsonUtils.getJsonFromFile( path, new ResolutionIndex() );
+        }
+        if( index == null ) index = new ResolutionIndex();
+        // gson does not know about concurrent maps
+        index.resolutions = new ConcurrentHashMap<>( index.resolutions );
+        index.filepath = path;
+        return index;
+    }//end loadInstance
+
+
+    /**
+     * @param link the link of the course page
+     * @return where it led the last time, or null if unknown
+     */
+    public Resolution get( String link ){
+        return resolutions.get( CybeUtils.normaliseUrl( link ) );
+    }
+
+
+    /**
+     * Store the resolution of a link.
+     *
+     * @param link       the link of the course page
+     * @param resolution where it leads to
+     */
+    public void put( String link, Resolution resolution ){
+        resolutions.put( CybeUtils.normaliseUrl( link ), resolution );
+        modified = true;
+    }
+
+
+    /**
+     * Forget a link, e.g. because its resolution is outdated.
+     *
+     * @param link the link of the course page
+     */
+    public void remove( String link ){
+        modified |= resolutions.remove( CybeUtils.normaliseUrl( link ) ) != null;
+    }
+
+
+    /** @return the number of links in the index */
+    public int size(){
+        return resolutions.size();
+    }
+
+
+    /** @return true if a modification was made since the last save, false otherwise */
+    public boolean isModified(){
+        return modified;
+    }
+
+
+    /**
+     * Save the index to the file it was loaded from (if it was modified).
+     *
+     * @return true upon success
+     */
+    public boolean save(){
+        boolean ret = false;
+        if( modified && filepath != null ){
+            ret = CybeUtils.writeJsonFile( filepath, this );
+            modified = !ret;
+        }
+        return ret;
+    }//end save
+}//end class
@@ -0,0 +1,306 @@
+package network;
+
+import org.apache.http.Header;
+import org.apache.http.HttpHeaders;
+import org.apache.http.HttpResponse;
+import org.apache.http.HttpStatus;
+import org.apache.http.client.methods.HttpHead;
+import org.apache.http.client.methods.HttpUriRequest;
+import utils.ResourceWriter;
+
+import java.io.*;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * The content of a resource, as given to a {@link CybeConnector.ResourceConsumer}. Besides the content itself, it
+ * gives access to the headers of the response, so the consumer can take decisions before reading the content.
+ * <p/>
+ * Like any other stream given to a consumer, it is closed by the connector. A consumer does not need to read the
+ * content it does not want: if more than a few KB are left unread, the connector aborts the download instead of
+ * draining the connection (see {@link #abort()}).
+ */
+public class ResourceStream extends FilterInputStream{
+
+    /* the offset of a part file is persisted every CHECKPOINT_BYTES */
+    private static final long CHECKPOINT_BYTES = 4 * 1024 * 1024;
+    private static final Pattern CONTENT_RANGE_PATTERN = Pattern.compile( "bytes (\\d+)-(\\d+)/(\\d+|\\*)" );
+
+    private final HttpResponse response;
+    private final String url;
+
+    // for the segmented downloads: null if the stream was not created by a connector
+    private final CybeConnector connector;
+    private final HttpUriRequest request;
+    private final RequestHandle handle;
+
+    private long bytesRead = 0;
+    private boolean eof = false;
+
+
+    /**
+     * @param in       the content of the response
+     * @param response the response
+     * @param url      the url of the resource (after redirects)
+     */
+    public ResourceStream( InputStream in, HttpResponse response, String url ){
+        this( in, response, url, null, null, null );
+    }
+
+
+    /* a stream which can be replaced by a segmented download (see saveTo) */
+    ResourceStream( InputStream in, HttpResponse response, String url, CybeConnector connector,
+                    HttpUriRequest request, RequestHandle handle ){
+        super( in );
+        this.response = response;
+        this.url = url;
+        this.connector = connector;
+        this.request = request;
+        this.handle = handle;
+    }
+
+
+    @Override
+    public int read() throws IOException{
+        int b = super.read();
+        if( b < 0 ) eof = true;
+        else bytesRead++;
+        return b;
+    }
+
+
+    @Override
+    public int read( byte[] b, int off, int len ) throws IOException{
+        int n = super.read( b, off, len );
+        if( n < 0 ) eof = true;
+        else bytesRead += n;
+        return n;
+    }
+
+
+    @Override
+    public long skip( long n ) throws IOException{
+        long skipped = super.skip( n );
+        bytesRead += skipped;
+        return skipped;
+    }
+
+
+    /** @return the number of bytes of content not read yet, or -1 if unknown */
+    public long getRemaining(){
+        if( eof ) return 0;
+        long length = getContentLength();
+        return length >= 0 ? Math.max( 0, length - bytesRead ) : -1;
+    }
+
+
+    /** @return the url of the resource, after redirects */
+    public String getUrl(){
+        return url;
+    }
+
+
+    /** @return the length of the content as announced by the server, or -1 if unknown */
+    public long getContentLength(){
+        if( response.getEntity() != null ) return response.getEntity().getContentLength();
+        try{
+            // no entity: answer to a HEAD request
+            String length = getHeader( HttpHeaders.CONTENT_LENGTH );
+            return length != null ? Long.parseLong( length.trim() ) : -1;
+        }catch( NumberFormatException e ){
+            return -1;
+        }
+    }
+
+
+    /**
+     * @return true if this is the answer to a HEAD request (see {@link CybeConnector#headResource(String,
+     * network.CybeConnector.ResourceConsumer, network.CybeConnector.HttpErrorHandler)}): the headers are available,
+     * but the stream is empty.
+     */
+    public boolean isHeadersOnly(){
+        return request != null && HttpHead.METHOD_NAME.equals( request.getMethod() );
+    }
+
+
+    /**
+     * @param name the name of the header
+     * @return the value of the first header with this name, or null
+     */
+    public String getHeader( String name ){
+        Header header = response.getFirstHeader( name );
+        return header != null ? header.getValue() : null;
+    }
+
+
+    /** @return the raw response */
+    public HttpResponse getResponse(){
+        return response;
+    }
+
+
+    /**
+     * Abort the download: the connection is closed instead of transferring the rest of the content. Use it when the
+     * resource is not wanted after all, e.g. because the same url was already downloaded.
+     */
+    public void abort(){
+        if( request != null ) request.abort();
+    }
+
+
+    /** @return true if the response is partial (206), i.e. the content starts at {@link #getRangeStart()} */
+    public boolean isPartial(){
+        return response.getStatusLine().getStatusCode() == HttpStatus.SC_PARTIAL_CONTENT;
+    }
+
+
+    /** @return the position of the first byte of the content in the resource (0 unless partial) */
+    public long getRangeStart(){
+        long[] range = contentRange();
+        return range != null ? range[ 0 ] : 0;
+    }
+
+
+    /** @return the length of the whole resource (not only this part), or -1 if unknown */
+    public long getTotalLength(){
+        if( !isPartial() ) return getContentLength();
+        long[] range = contentRange();
+        return range != null ? range[ 1 ] : -1;
+    }
+
+    //----------------------------------------------------
+
+
+    /**
+     * Write the (remaining) content into a file, using the default {@link ResourceWriter.Mode}.
+     * See {@link #saveTo(java.io.File, utils.ResourceWriter.Mode)}.
+     *
+     * @param target the file, which will be created or overwritten
+     * @return the number of bytes written
+     * @throws IOException
+     */
+    public long saveTo( File target ) throws IOException{
+        return saveTo( target, ResourceWriter.DEFAULT_MODE );
+    }
+
+
+    /**
+     * Write the (remaining) content into a file.
+     * <p/>
+     * The content is first written into a {@link PartFile}, whose offset is regularly persisted. If this response is
+     * the continuation of an unfinished download of the same resource (206 - partial content, see {@link
+     * CybeConnector#addPartFile(PartFile)}), the content is appended to it. Once complete, the part file is renamed
+     * to the target. If the length of the resource is known, the part file is preallocated.
+     * <p/>
+     * If the resource is big and the server accepts range requests, this response is aborted and the resource is
+     * downloaded in several ranges in parallel instead (see {@link ConnectorConfig#setSegments(int)}). A segmented
+     * download cannot be resumed: if it fails, the next one starts from scratch.
+     *
+     * @param target the file, which will be created or overwritten
+     * @param mode   how to write the file
+     * @return the number of bytes written
+     * @throws IOException if the download failed or is incomplete. The part file is kept, so it can be resumed.
+     */
+    public long saveTo( File target, ResourceWriter.Mode mode ) throws IOException{
+        PartFile part = PartFile.of( target );
+        long start = 0, total = getTotalLength();
+
+        if( isPartial() && url.equals( part.getUrl() ) && getRangeStart() == part.getOffset() ){
+            start = getRangeStart(); // resume
+        }else if( isPartial() ){
+            throw new IOException( "unexpected partial content for " + target );
+        }else{
+            part.restart( url, getHeader( HttpHeaders.ETAG ), getHeader( HttpHeaders.LAST_MODIFIED ), total );
+        }
+
+        long end = start;
+
+        try( RandomAccessFile file = new RandomAccessFile( part.getPartFile(), "rw" ) ){
+            FileChannel channel = file.getChannel();
+            file.setLength( total > 0 ? total : start ); // preallocate
+
+            if( connector != null && SegmentedDownload.isApplicable( this, connector.getConfig() ) ){
+                request.abort(); // the connection is closed, we don't need the rest of this response
+                end = new SegmentedDownload( connector, url, total, SegmentedDownload.validatorOf( this ),
+                        connector.getConfig().getSegments(), handle ).writeTo( channel, mode );
+            }else{
+                end += write( part, channel, start, mode );
+            }
+
+            channel.force( false );
+            if( total > 0 && end != total ){
+                part.checkpoint( end );
+                throw new IOException( String.format( "incomplete download of %s: got %d bytes out of %d",
+                        target, end, total ) );
+            }
+            if( file.length() != end ) file.setLength( end );
+        }
+
+        moveAtomically( part.getPartFile(), target );
+        part.deleteMeta();
+        markSaved();
+        return end - start;
+    }//end saveTo
+
+
+    /**
+     * Tell the connector that the resource was stored: its validators are remembered, so that the next request for
+     * it is conditional (see {@link CybeConnector#setValidatorStore(ValidatorStore)}). This is done by {@link
+     * #saveTo(java.io.File)}: call it only if the content was stored by other means.
+     */
+    public void markSaved(){
+        if( connector != null ) connector.saved( url, response );
+    }
+
+    /* *****************************************************************
+     * private utils
+     * ****************************************************************/
+
+
+    /* write the content at the given offset, checkpointing the part file regularly (and on failure) */
+    private long write( PartFile part, FileChannel channel, long offset, ResourceWriter.Mode mode ) throws
+            IOException{
+        final long[] checkpoint = { offset };
+        try{
+            return ResourceWriter.write( channel, offset, this, mode, written -> {
+                if( offset + written - checkpoint[ 0 ] >= CHECKPOINT_BYTES ){
+                    try{
+                        channel.force( false );
+                        checkpoint[ 0 ] = offset + written;
+                        part.checkpoint( checkpoint[ 0 ] );
+                    }catch( IOException ignored ){
+                        // the next checkpoint will do
+                    }
+                }
+            } );
+        }catch( IOException e ){
+            part.checkpoint( checkpoint[ 0 ] );
+            throw e;
+        }
+    }//end write
+
+
+    /* parse the Content-Range header: bytes start-end/total => [start, total]. Total is -1 if unknown */
+    private long[] contentRange(){
+        String value = getHeader( HttpHeaders.CONTENT_RANGE );
+        if( value == null ) return null;
+        Matcher matcher = CONTENT_RANGE_PATTERN.matcher( value.trim() );
+        if( !matcher.matches() ) return null;
+        return new long[]{ Long.parseLong( matcher.group( 1 ) ), //
+                matcher.group( 3 ).equals( "*" ) ? -1 : Long.parseLong( matcher.group( 3 ) ) };
+    }//end contentRange
+
+
+    private static void moveAtomically( File source, File target ) throws IOException{
+        try{
+            Files.move( source.toPath(), target.toPath(), StandardCopyOption.ATOMIC_MOVE,
+                    StandardCopyOption.REPLACE_EXISTING );
+        }catch( AtomicMoveNotSupportedException e ){
+            Files.move( source.toPath(), target.toPath(), StandardCopyOption.REPLACE_EXISTING );
+        }
+    }//end moveAtomically
+}//end class
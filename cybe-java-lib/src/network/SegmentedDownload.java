@@ -0,0 +1,164 @@
+package network;
+
+import org.apache.http.HttpHeaders;
+import org.apache.http.HttpStatus;
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.client.methods.HttpGet;
+import utils.ResourceWriter;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+
+/**
+ * A big resource downloaded in several ranges, in parallel. Each range is fetched with its own request (Range and
+ * If-Range headers) and written at its position in a preallocated file, so a single resource can use several
+ * connections of the pool instead of one.
+ * <p/>
+ * The If-Range validator ensures all the ranges come from the same version of the resource: if it changes in the
+ * meantime, the server answers 200 instead of 206 and the download fails.
+ */
+class SegmentedDownload{
+
+    private final CybeConnector connector;
+    private final String url;
+    private final long length;
+    private final String validator;
+    private final int segments;
+    private final RequestHandle handle; // may be null
+
+    private final List<HttpGet> requests = new ArrayList<>();
+
+
+    /**
+     * @param connector the connector, which executes the requests
+     * @param url       the url of the resource
+     * @param length    the total length of the resource
+     * @param validator the strong ETag or Last-Modified date of the resource, sent in the If-Range header
+     * @param segments  the number of ranges
+     * @param handle    the handle of the download, which can abort the ranges too, or null
+     */
+    SegmentedDownload( CybeConnector connector, String url, long length, String validator, int segments,
+                       RequestHandle handle ){
+        this.connector = connector;
+        this.url = url;
+        this.length = length;
+        this.validator = validator;
+        this.segments = segments;
+        this.handle = handle;
+    }
+
+
+    /**
+     * Check if the resource can be downloaded in segments: it must be bigger than the threshold, the server must
+     * accept byte ranges and a validator must be available for the If-Range header.
+     *
+     * @param stream the response to the first (full) request
+     * @param config the config of the connector
+     * @return true if a segmented download is possible
+     */
+    static boolean isApplicable( ResourceStream stream, ConnectorConfig config ){
+        return config.getSegments() > 1 && !stream.isPartial() && //
+                stream.getTotalLength() >= config.getSegmentThreshold() && //
+                "bytes".equalsIgnoreCase( stream.getHeader( HttpHeaders.ACCEPT_RANGES ) ) && //
+                validatorOf( stream ) != null;
+    }//end isApplicable
+
+
+    /**
+     * @param stream a response
+     * @return the validator to use in the If-Range header: the strong ETag, or the Last-Modified date, or null.
+     */
+    static String validatorOf( ResourceStream stream ){
+        String etag = stream.getHeader( HttpHeaders.ETAG );
+        if( etag != null && !etag.startsWith( "W/" ) ) return etag;
+        return stream.getHeader( HttpHeaders.LAST_MODIFIED );
+    }
+
+    //----------------------------------------------------
+
+
+    /**
+     * Download all the ranges and write them into the channel. The file should be preallocated.
+     *
+     * @param channel the file channel
+     * @param mode    how to write each range
+     * @return the number of bytes written, i.e. the length of the resource
+     * @throws IOException if one of the ranges failed (the others are aborted) or the file is incomplete
+     */
+    long writeTo( FileChannel channel, ResourceWriter.Mode mode ) throws IOException{
+        long segmentSize = ( length + segments - 1 ) / segments;
+        List<Future<Long>> futures = new ArrayList<>();
+
+        for( long start = 0; start < length; start += segmentSize ){
+            final long from = start, to = Math.min( length, start + segmentSize ) - 1;
+            HttpGet get = new HttpGet( url );
+            get.setHeader( HttpHeaders.RANGE, "bytes=" + from + "-" + to );
+            get.setHeader( HttpHeaders.IF_RANGE, validator );
+            synchronized( requests ){
+                requests.add( get );
+            }
+            if( handle != null ) handle.attach( get );
+            futures.add( connector.getSegmentExecutor().submit( () -> fetch( get, channel, from, to, mode ) ) );
+        }//end for
+
+        long written = 0;
+        IOException error = null;
+        for( Future<Long> future : futures ){
+            try{
+                written += future.get();
+            }catch( ExecutionException | InterruptedException e ){
+                if( error == null ){
+                    Throwable cause = e.getCause() != null ? e.getCause() : e;
+                    error = cause instanceof IOException ? ( IOException ) cause : new IOException( cause );
+                    abortAll(); // no need to go on
+                }
+            }
+        }//end for
+
+        if( handle != null ) requests.forEach( handle::detach );
+        if( error != null ) throw error;
+        if( written != length ){
+            throw new IOException( String.format( "incomplete download of %s: got %d bytes out of %d", url,
+                    written, length ) );
+        }
+        return written;
+    }//end writeTo
+
+    /* *****************************************************************
+     * private utils
+     * ****************************************************************/
+
+
+    /* fetch one range and write it at its position */
+    private long fetch( HttpGet get, FileChannel channel, long from, long to, ResourceWriter.Mode mode ) throws
+            IOException{
+        try( CloseableHttpResponse response = connector.execute( get ) ){
+            ResourceStream stream = new ResourceStream( response.getEntity().getContent(), response, url );
+            if( response.getStatusLine().getStatusCode() != HttpStatus.SC_PARTIAL_CONTENT || //
+                    stream.getRangeStart() != from ){
+                throw new IOException( String.format( "range %d-%d of %s: unexpected answer %s", from, to, url,
+                        response.getStatusLine() ) );
+            }
+
+            long written = ResourceWriter.write( channel, from, stream, mode );
+            if( written != to - from + 1 ){
+                throw new IOException( String.format( "range %d-%d of %s: got %d bytes", from, to, url, written ) );
+            }
+            return written;
+
+        }finally{
+            get.releaseConnection();
+        }
+    }//end fetch
+
+
+    private void abortAll(){
+        synchronized( requests ){
+            requests.forEach( HttpGet::abort );
+        }
+    }
+}//end class
@@ -0,0 +1,81 @@
+package network;
+
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.client.methods.HttpUriRequest;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.protocol.HttpContext;
+
+import java.io.IOException;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A {@link HttpTransport} on top of the pooled http client of the connector, whose asynchronous requests are run by a
+ * fixed pool of threads.
+ * <p/>
+ * This is not a non-blocking engine: each thread of the pool makes a blocking call and is held until the response
+ * is handled. Only the caller is freed: any number of requests can be queued, and at most {@code threads} of them
+ * are on the wire at the same time.
+ */
+public class ThreadPoolTransport implements HttpTransport{
+
+    private final CloseableHttpClient httpclient;
+    private final int threads;
+    private ExecutorService executor; // created on the first asynchronous request
+
+
+    /**
+     * @param httpclient the client
+     * @param threads    the number of threads executing the asynchronous requests. It should leave connections to
+     *                   the synchronous requests (e.g. the viewers followed by the consumers)
+     */
+    public ThreadPoolTransport( CloseableHttpClient httpclient, int threads ){
+        this.httpclient = httpclient;
+        this.threads = threads;
+    }
+
+
+    @Override
+    public CloseableHttpResponse execute( HttpUriRequest request, HttpContext context ) throws IOException{
+        return httpclient.execute( request, context );
+    }
+
+
+    @Override
+    public CompletableFuture<CloseableHttpResponse> executeAsync( HttpUriRequest request, HttpContext context ){
+        CompletableFuture<CloseableHttpResponse> future = new CompletableFuture<>();
+        try{
+            getExecutor().execute( () -> {
+                try{
+                    future.complete( execute( request, context ) );
+                }catch( Throwable e ){
+                    future.completeExceptionally( e );
+                }
+            } );
+        }catch( RejectedExecutionException e ){
+            future.completeExceptionally( e ); // closed
+        }
+        return future;
+    }//end executeAsync
+
+
+    /** @return the executor running the asynchronous requests and their callbacks */
+    public synchronized Executor getExecutor(){
+        if( executor == null ){
+            AtomicInteger count = new AtomicInteger();
+            executor = Executors.newFixedThreadPool( threads, r -> {
+                Thread thread = new Thread( r, "cybe-transport-" + count.incrementAndGet() );
+                thread.setDaemon( true );
+                return thread;
+            } );
+        }
+        return executor;
+    }//end getExecutor
+
+
+    /** Stop the asynchronous threads. The http client is left open, since it belongs to the connector. */
+    @Override
+    public synchronized void close(){
+        if( executor != null ) executor.shutdownNow();
+    }
+}//end class
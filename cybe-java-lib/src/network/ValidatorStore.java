@@ -0,0 +1,177 @@
+package network;
+
+import com.google.gson.annotations.SerializedName;
+import gson.DoNotSerialize;
+import gson.GsonContainable;
+import gson.GsonUtils;
+import org.apache.http.Header;
+import org.apache.http.HttpHeaders;
+import org.apache.http.HttpResponse;
+import utils.CybeUtils;
+
+import java.io.File;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Persistent store of the validators (ETag, Last-Modified and Content-Length) of the resources downloaded so far,
+ * keyed by url. It allows the {@link CybeConnector} to issue conditional requests (If-None-Match/If-Modified-Since)
+ * and to skip the download of the resources which did not change on the server.
+ * <p/>
+ * The store can be safely used from multiple threads.
+ */
+public class ValidatorStore implements GsonContainable{
+
+    public static final String DEFAULT_FILEPATH = //
+            System.getProperty( "user.home" ) + File.separator + ".cybevalidators";
+
+    @SerializedName( "validators" )
+    private Map<String, Validators> validators = new ConcurrentHashMap<>();
+
+    // -- not serialized
+    @DoNotSerialize
+    private String filepath;
+
+    @DoNotSerialize
+    private volatile boolean modified;
+
+    //----------------------------------------------------
+
+
+    /**
+     * The validators of one resource.
+     */
+    public static class Validators{
+        @SerializedName( "etag" )
+        private String etag;
+
+        @SerializedName( "last_modified" )
+        private String lastModified;
+
+        @SerializedName( "content_length" )
+        private long contentLength = -1;
+
+
+        public Validators(){
+        }
+
+
+        public Validators( String etag, String lastModified, long contentLength ){
+            this.etag = etag;
+            this.lastModified = lastModified;
+            this.contentLength = contentLength;
+        }
+
+
+        /** @return the validators of the response, or null if it has neither an ETag nor a Last-Modified header */
+        public static Validators of( HttpResponse response ){
+            String etag = headerValue( response, HttpHeaders.ETAG );
+            String lastModified = headerValue( response, HttpHeaders.LAST_MODIFIED );
+            if( etag == null && lastModified == null ) return null;
+
+            long length = response.getEntity() != null ? response.getEntity().getContentLength() : -1;
+            return new Validators( etag, lastModified, length );
+        }
+
+
+        public String getEtag(){
+            return etag;
+        }
+
+
+        public String getLastModified(){
+            return lastModified;
+        }
+
+
+        /** @return the content-length, or -1 if unknown */
+        public long getContentLength(){
+            return contentLength;
+        }
+
+
+        private static String headerValue( HttpResponse response, String name ){
+            Header header = response.getFirstHeader( name );
+            return header != null ? header.getValue() : null;
+        }
+    }
+
+    //----------------------------------------------------
+
+
+    /** Create an empty store, saved to {@link #DEFAULT_FILEPATH}. */
+    public ValidatorStore(){
+        this.filepath = DEFAULT_FILEPATH;
+    }
+
+
+    /**
+     * Load the store from the given file. If the file does not exist or can't be read, an empty store is returned.
+     *
+     * @param path the path to the file
+     * @return the store
+     */
+    public static ValidatorStore loadInstance( String path ){
+        ValidatorStore store = null;
+        if( new File( path ).exists() ){
+            store = ( ValidatorStore ) GsonUtils.getJsonFromFile( path, new ValidatorStore() );
+        }
+        if( store == null ) store = new ValidatorStore();
+        // gson does not know about concurrent maps
+        store.validators = new ConcurrentHashMap<>( store.validators );
+        store.filepath = path;
+        return store;
+    }//end loadInstance
+
+
+    /**
+     * @param url the url of the resource
+     * @return the validators of the resource, or null if unknown
+     */
+    public Validators get( String url ){
+        return validators.get( CybeUtils.normaliseUrl( url ) );
+    }
+
+
+    /**
+     * Store the validators of a resource
+     *
+     * @param url        the url of the resource
+     * @param validators its validators
+     */
+    public void put( String url, Validators validators ){
+        this.validators.put( CybeUtils.normaliseUrl( url ), validators );
+        modified = true;
+    }
+
+
+    /**
+     * Forget a resource.
+     *
+     * @param url the url of the resource
+     */
+    public void remove( String url ){
+        modified |= validators.remove( CybeUtils.normaliseUrl( url ) ) != null;
+    }
+
+
+    /** @return true if a modification was made since the last save, false otherwise */
+    public boolean isModified(){
+        return modified;
+    }
+
+
+    /**
+     * Save the store to the file it was loaded from (if it was modified).
+     *
+     * @return true upon success
+     */
+    public boolean save(){
+        boolean ret = false;
+        if( modified ){
+            ret = CybeUtils.writeJsonFile( filepath, this );
+            modified = !ret;
+        }
+        return ret;
+    }//end save
+}//end class
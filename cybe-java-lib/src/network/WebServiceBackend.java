@@ -0,0 +1,309 @@
+package network;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParseException;
+import com.google.gson.JsonParser;
+import org.apache.http.HttpResponse;
+import org.apache.http.NameValuePair;
+import org.apache.http.client.entity.UrlEncodedFormEntity;
+import org.apache.http.client.methods.HttpPost;
+import org.apache.http.message.BasicNameValuePair;
+import org.apache.http.util.EntityUtils;
+import props.PlatformLinks;
+import utils.SuperSimpleLogger;
+
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.UnsupportedEncodingException;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Access to the moodle REST web service, an alternative to the parsing of the html pages.
+ * <p/>
+ * A single call ({@code core_course_get_contents}) lists all the files of a course, with their url, size and
+ * modification date, where the html parsing needs the course page plus one to three pages per resource. The courses
+ * of the user are given by {@code core_enrol_get_users_courses}.
+ * <p/>
+ * The web service needs a token, requested from {@code login/token.php} with the credentials of the user on the
+ * first use. If the platform does not allow it (e.g. single sign-on accounts), the backend is not available and the
+ * {@link CybeParser} parses the html pages instead.
+ */
+public class WebServiceBackend{
+
+    private static final Pattern COURSE_ID_PATTERN = Pattern.compile( ".*[?&]id=(\\d+).*" );
+
+    private final CybeConnector connector;
+    private final PlatformLinks platform;
+    private final AuthContainer auth;
+    private SuperSimpleLogger logger = SuperSimpleLogger.silentInstance();
+
+    private String token; // null until the login
+    private boolean loginFailed;
+
+    //----------------------------------------------------
+
+
+    /** A section of a course, with the files of its modules. */
+    public static class Section{
+        private final String id, name;
+        private final List<FileEntry> files = new ArrayList<>();
+
+
+        Section( String id, String name ){
+            this.id = id;
+            this.name = name;
+        }
+
+
+        public String getId(){
+            return id;
+        }
+
+
+        public String getName(){
+            return name;
+        }
+
+
+        public List<FileEntry> getFiles(){
+            return files;
+        }
+    }//end class
+
+
+    /** A file of a module (resource, folder, ...). */
+    public static class FileEntry{
+        private final String filename, fileUrl;
+        private final long size, timeModified;
+
+
+        FileEntry( String filename, String fileUrl, long size, long timeModified ){
+            this.filename = filename;
+            this.fileUrl = fileUrl;
+            this.size = size;
+            this.timeModified = timeModified;
+        }
+
+
+        public String getFilename(){
+            return filename;
+        }
+
+
+        /** @return the url of the file, without the token: the connector adds it to the requests */
+        public String getFileUrl(){
+            return fileUrl;
+        }
+
+
+        /** @return the size in bytes, or 0 if unknown */
+        public long getSize(){
+            return size;
+        }
+
+
+        /** @return the modification date, in seconds since the epoch */
+        public long getTimeModified(){
+            return timeModified;
+        }
+    }//end class
+
+    //----------------------------------------------------
+
+
+    /**
+     * @param connector the connector, used for the requests
+     * @param platform  the platform, giving the urls of the web service
+     * @param auth      the credentials, to request a token
+     */
+    public WebServiceBackend( CybeConnector connector, PlatformLinks platform, AuthContainer auth ){
+        this.connector = connector;
+        this.platform = platform;
+        this.auth = auth;
+    }
+
+
+    public void setLogger( SuperSimpleLogger logger ){
+        this.logger = logger;
+    }
+
+
+    /**
+     * Check that the web service can be used, requesting a token if needed. The token is requested only once: if it
+     * fails, the backend stays unavailable.
+     *
+     * @return true if the web service can be used
+     */
+    public synchronized boolean isAvailable(){
+        if( token == null && !loginFailed ){
+            try{
+                token = requestToken();
+                connector.setWebServiceToken( token ); // the files need it too
+            }catch( IOException e ){
+                logger.warn.printf( "Web service not available: %s%n", e.getMessage() );
+                loginFailed = true;
+            }
+        }
+        return token != null;
+    }//end isAvailable
+
+
+    /**
+     * Get the courses of the user.
+     *
+     * @return a map (course name, course page url), like {@link CybeParser#getListOfCourses()}
+     * @throws IOException if the web service failed
+     */
+    public Map<String, String> getCourses() throws IOException{
+        JsonObject info = call( "core_webservice_get_site_info" ).getAsJsonObject();
+        JsonArray courses = call( "core_enrol_get_users_courses", "userid", info.get( "userid" ).getAsString() )
+                .getAsJsonArray();
+
+        Map<String, String> result = new HashMap<>();
+        for( JsonElement element : courses ){
+            JsonObject course = element.getAsJsonObject();
+            result.put( course.get( "fullname" ).getAsString(), //
+                    connector.getHomeUrl() + "/course/view.php?id=" + course.get( "id" ).getAsString() );
+        }//end for
+        return result;
+    }//end getCourses
+
+
+    /**
+     * Get the files of a course.
+     *
+     * @param courseUrl the url of the course page, with its id
+     * @return the sections of the course
+     * @throws IOException if the course id can't be found in the url or the web service failed
+     */
+    public List<Section> getCourseContents( String courseUrl ) throws IOException{
+        Matcher matcher = COURSE_ID_PATTERN.matcher( courseUrl );
+        if( !matcher.matches() ) throw new IOException( "no course id in " + courseUrl );
+
+        List<Section> sections = new ArrayList<>();
+        for( JsonElement element : call( "core_course_get_contents", "courseid", matcher.group( 1 ) )
+                .getAsJsonArray() ){
+            JsonObject json = element.getAsJsonObject();
+            Section section = new Section( string( json, "id" ), string( json, "name" ) );
+            sections.add( section );
+            if( !json.has( "modules" ) ) continue;
+
+            for( JsonElement module : json.getAsJsonArray( "modules" ) ){
+                JsonObject mod = module.getAsJsonObject();
+                if( !mod.has( "contents" ) ) continue; // e.g. a label
+
+                for( JsonElement content : mod.getAsJsonArray( "contents" ) ){
+                    JsonObject file = content.getAsJsonObject();
+                    if( !"file".equals( string( file, "type" ) ) || !file.has( "fileurl" ) ) continue;
+                    section.files.add( new FileEntry( string( file, "filename" ), string( file, "fileurl" ), //
+                            number( file, "filesize" ), number( file, "timemodified" ) ) );
+                }//end for
+            }//end for
+        }//end for
+        return sections;
+    }//end getCourseContents
+
+
+    /* *****************************************************************
+     * private utils
+     * ****************************************************************/
+
+
+    /* get a token for the user, using its credentials */
+    private String requestToken() throws IOException{
+        List<NameValuePair> params = new ArrayList<>();
+        params.add( new BasicNameValuePair( "username", auth.username() ) );
+        params.add( new BasicNameValuePair( "password", auth.password() ) );
+        params.add( new BasicNameValuePair( "service", platform.webServiceName() ) );
+
+        HttpPost post = new HttpPost( platform.webServiceTokenUrl() );
+        try{
+            post.setEntity( new UrlEncodedFormEntity( params, StandardCharsets.UTF_8.name() ) );
+            HttpResponse response = connector.getHttpclient().execute( post );
+            JsonObject json = parse( EntityUtils.toString( response.getEntity(), StandardCharsets.UTF_8 ) )
+                    .getAsJsonObject();
+            if( !json.has( "token" ) ) throw new IOException( "no token: " + string( json, "error" ) );
+            return json.get( "token" ).getAsString();
+
+        }catch( IllegalStateException | JsonParseException e ){
+            throw new IOException( "invalid answer from " + platform.webServiceTokenUrl(), e );
+        }finally{
+            post.releaseConnection();
+        }
+    }//end requestToken
+
+
+    /* call a function of the web service. The parameters are given as name, value, name, value, ... */
+    private JsonElement call( String function, String... params ) throws IOException{
+        if( !isAvailable() ) throw new IOException( "web service not available" );
+
+        StringBuilder url = new StringBuilder( platform.webServiceUrl() ) //
+                .append( "?moodlewsrestformat=json&wstoken=" ).append( encode( token ) ) //
+                .append( "&wsfunction=" ).append( encode( function ) );
+        for( int i = 0; i + 1 < params.length; i += 2 ){
+            url.append( '&' ).append( encode( params[ i ] ) ).append( '=' ).append( encode( params[ i + 1 ] ) );
+        }//end for
+
+        final JsonElement[] result = new JsonElement[ 1 ];
+        final String[] error = new String[ 1 ];
+        try{
+            connector.getResource( url.toString(), ( type, u, in ) -> //
+                    result[ 0 ] = parse( new InputStreamReader( in, StandardCharsets.UTF_8 ) ), //
+                    ( u, response ) -> error[ 0 ] = response.getStatusLine().toString() );
+        }catch( Exception e ){
+            throw new IOException( function + ": " + e.getMessage(), e );
+        }
+
+        if( error[ 0 ] != null ) throw new IOException( function + ": " + error[ 0 ] );
+        if( result[ 0 ] == null ) throw new IOException( function + ": no answer" );
+        if( result[ 0 ].isJsonObject() && result[ 0 ].getAsJsonObject().has( "exception" ) ){
+            throw new IOException( function + ": " + string( result[ 0 ].getAsJsonObject(), "message" ) );
+        }
+        return result[ 0 ];
+    }//end call
+
+
+    private static JsonElement parse( String json ) throws IOException{
+        try{
+            return new JsonParser().parse( json );
+        }catch( JsonParseException e ){
+            throw new IOException( "invalid json", e );
+        }
+    }
+
+
+    private static JsonElement parse( InputStreamReader reader ) throws IOException{
+        try{
+            return new JsonParser().parse( reader );
+        }catch( JsonParseException e ){
+            throw new IOException( "invalid json", e );
+        }
+    }
+
+
+    private static String string( JsonObject json, String name ){
+        JsonElement element = json.get( name );
+        return element != null && !element.isJsonNull() ? element.getAsString() : null;
+    }
+
+
+    private static long number( JsonObject json, String name ){
+        JsonElement element = json.get( name );
+        return element != null && !element.isJsonNull() ? element.getAsLong() : 0;
+    }
+
+
+    private static String encode( String value ){
+        try{
+            return URLEncoder.encode( value, StandardCharsets.UTF_8.name() );
+        }catch( UnsupportedEncodingException e ){
+            throw new IllegalStateException( e ); // utf-8 is always supported
+        }
+    }
+}//end class
@@ -0,0 +1,173 @@
+package props;
+
+import com.google.gson.annotations.SerializedName;
+import gson.DoNotSerialize;
+import gson.GsonContainable;
+import gson.GsonUtils;
+import utils.CybeUtils;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.*;
+
+/**
+ * The registry of the course directories, i.e. the directories with a local config, stored next to the global
+ * config.
+ * <p/>
+ * The directories are registered by {@code cybe init}, so that {@code cybe --all} does not have to walk the whole
+ * tree to find them. The entries are checked when they are read: a directory whose local config is gone is removed.
+ * A directory created by other means (copy, older version) can be found again with a full scan, which skips the
+ * directories of the skip list (by name) in addition to the hidden ones.
+ */
+public class DirectoryRegistry implements GsonContainable{
+
+    public static final String DEFAULT_FILEPATH = //
+            System.getProperty( "user.home" ) + File.separator + ".cybedirs";
+
+    public static final List<String> DEFAULT_SKIP_LIST = Arrays.asList( "node_modules", "Library", "AppData" );
+
+    @SerializedName( "directories" )
+    private Set<String> directories = new TreeSet<>();
+
+    @SerializedName( "skip" )
+    private List<String> skipList = new ArrayList<>( DEFAULT_SKIP_LIST );
+
+    // -- not serialized
+    @DoNotSerialize
+    private String filepath;
+
+    @DoNotSerialize
+    private boolean modified;
+
+    //----------------------------------------------------
+
+
+    /** Create an empty registry, which cannot be saved. See {@link #loadInstance(String)}. */
+    public DirectoryRegistry(){
+    }
+
+
+    /**
+     * Load the registry from the given file. If the file does not exist or can't be read, an empty registry is
+     * returned (see {@link #exists()}).
+     *
+     * @param path the path to the file
+     * @return the registry
+     */
+    public static DirectoryRegistry loadInstance( String path ){
+        DirectoryRegistry registry = null;
+        if( new File( path ).exists() ){
+            registry = ( DirectoryRegistry ) GsonUtils.getJsonFromFile( path, new DirectoryRegistry() );
+        }
+        if( registry == null ) registry = new DirectoryRegistry();
+        // gson gives a linked hash set
+        registry.directories = new TreeSet<>( registry.directories );
+        if( registry.skipList == null ) registry.skipList = new ArrayList<>();
+        registry.filepath = path;
+        return registry;
+    }//end loadInstance
+
+
+    /** @return the registry stored next to the global config */
+    public static DirectoryRegistry getInstance(){
+        return loadInstance( DEFAULT_FILEPATH );
+    }
+
+
+    /** @return true if the registry was loaded from a file, i.e. a scan was already made */
+    public boolean exists(){
+        return filepath != null && new File( filepath ).exists();
+    }
+
+
+    /**
+     * @param directory a course directory
+     * @return true if it was not registered yet
+     */
+    public synchronized boolean add( String directory ){
+        boolean added = directories.add( canonical( directory ) );
+        modified |= added;
+        return added;
+    }
+
+
+    /**
+     * @param directory a course directory
+     * @return true if it was registered
+     */
+    public synchronized boolean remove( String directory ){
+        boolean removed = directories.remove( canonical( directory ) );
+        modified |= removed;
+        return removed;
+    }
+
+
+    /**
+     * Get the registered directories under the given root. The directories without local config are removed from
+     * the registry.
+     *
+     * @param root       the root directory
+     * @param configName the name of the local config file, e.g. .cybe
+     * @return the directories, sorted
+     */
+    public synchronized List<String> getDirectories( String root, String configName ){
+        String prefix = canonical( root );
+        List<String> result = new ArrayList<>();
+
+        for( Iterator<String> it = directories.iterator(); it.hasNext(); ){
+            String dir = it.next();
+            if( !isUnder( dir, prefix ) ) continue;
+            if( new File( dir, configName ).isFile() ){
+                result.add( dir );
+            }else{
+                it.remove(); // stale
+                modified = true;
+            }
+        }//end for
+        return result;
+    }//end getDirectories
+
+
+    /** @return the names of the directories not to scan */
+    public synchronized List<String> getSkipList(){
+        return new ArrayList<>( skipList );
+    }
+
+
+    /** @return true if a modification was made since the last save, false otherwise */
+    public synchronized boolean isModified(){
+        return modified;
+    }
+
+
+    /**
+     * Save the registry to the file it was loaded from (if it was modified or does not exist yet).
+     *
+     * @return true upon success
+     */
+    public synchronized boolean save(){
+        boolean ret = false;
+        if( ( modified || !exists() ) && filepath != null ){
+            ret = CybeUtils.writeJsonFile( filepath, this );
+            modified = !ret;
+        }
+        return ret;
+    }//end save
+
+    //----------------------------------------------------
+
+
+    private static boolean isUnder( String dir, String prefix ){
+        return dir.equals( prefix ) || dir.startsWith( prefix.endsWith( File.separator ) ? prefix : //
+                prefix + File.separator );
+    }
+
+
+    private static String canonical( String directory ){
+        try{
+            return new File( directory ).getCanonicalPath();
+        }catch( IOException e ){
+            return new File( directory ).getAbsolutePath();
+        }
+    }
+}//end class
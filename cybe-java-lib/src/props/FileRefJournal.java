@@ -0,0 +1,167 @@
+package props;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonParseException;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The journal of the changes made to the file references of a {@link LocalConfig} (the inodes-to-names mapping)
+ * since its last full save, stored next to it ({@code .cybe.journal}).
+ * <p/>
+ * Saving a change appends one line to the journal instead of rewriting the whole configuration, so the cost of a
+ * save does not depend on the number of files of the course. On load, the journal is replayed over the mapping of
+ * the configuration. Once the journal is longer than the mapping, the configuration is saved in full and the journal
+ * deleted (compaction).
+ * <p/>
+ * Each line is a json array: {@code ["+", id, name]}, {@code ["-", id]} or {@code ["*"]} (remove all). The first line
+ * is {@code ["#", generation]}: the generation of the snapshot the entries apply to, which each full save increments.
+ * After a crash between the full save and the deletion of the journal, the journal belongs to an older generation
+ * and is dropped instead of being replayed over the newer snapshot. A line cut by a crash is ignored.
+ */
+class FileRefJournal{
+
+    public static final String SUFFIX = ".journal";
+
+    private static final Gson GSON = new Gson();
+
+    private final File file;
+    private int entries; // number of lines in the file
+
+
+    /** @param configPath the path of the local config */
+    FileRefJournal( String configPath ){
+        this.file = new File( configPath + SUFFIX );
+    }
+
+    //----------------------------------------------------
+
+
+    /* an entry of the journal */
+    static String[] put( String id, String name ){
+        return new String[]{ "+", id, name };
+    }
+
+
+    static String[] remove( String id ){
+        return new String[]{ "-", id };
+    }
+
+
+    static String[] clear(){
+        return new String[]{ "*" };
+    }
+
+
+    /* the head of the journal */
+    private static String[] generation( long generation ){
+        return new String[]{ "#", Long.toString( generation ) };
+    }
+
+    //----------------------------------------------------
+
+
+    /**
+     * Apply the entries of the journal (if any) to the mapping. A journal of another generation is deleted.
+     *
+     * @param refs       the mapping, as of the last full save
+     * @param generation the generation of the last full save
+     * @return the number of entries applied
+     */
+    int replay( Map<String, String> refs, long generation ){
+        entries = 0;
+        if( !file.exists() ) return 0;
+
+        boolean stale = false;
+        try( BufferedReader reader = new BufferedReader( new InputStreamReader( new FileInputStream( file ),
+                StandardCharsets.UTF_8 ) ) ){
+            stale = !isGeneration( parse( reader.readLine() ), generation );
+            String line;
+            while( !stale && ( line = reader.readLine() ) != null ){
+                entries++;
+                String[] entry = parse( line );
+                if( entry == null || entry.length == 0 ) continue;
+
+                if( entry[ 0 ].equals( "+" ) && entry.length == 3 ){
+                    refs.put( entry[ 1 ], entry[ 2 ] );
+                }else if( entry[ 0 ].equals( "-" ) && entry.length == 2 ){
+                    refs.remove( entry[ 1 ] );
+                }else if( entry[ 0 ].equals( "*" ) ){
+                    refs.clear();
+                }
+            }//end while
+        }catch( IOException e ){
+            System.err.printf( "Could not read the journal %s: %s%n", file, e );
+        }
+
+        if( stale ) delete(); // its entries are already in the snapshot, or were undone by it
+        return entries;
+    }//end replay
+
+
+    /**
+     * Append entries to the journal.
+     *
+     * @param newEntries the entries
+     * @param generation the generation of the last full save, written at the head of a new journal
+     * @throws IOException if the journal could not be written
+     */
+    void append( List<String[]> newEntries, long generation ) throws IOException{
+        if( newEntries.isEmpty() ) return;
+        StringBuilder builder = new StringBuilder();
+        if( file.length() == 0 ){
+            builder.append( GSON.toJson( generation( generation ) ) ).append( '\n' );
+        }else if( !endsWithNewline() ){
+            builder.append( '\n' ); // a line cut by a previous crash must not swallow the first entry
+        }
+        newEntries.forEach( entry -> builder.append( GSON.toJson( entry ) ).append( '\n' ) );
+
+        try( FileOutputStream out = new FileOutputStream( file, true ) ){
+            out.write( builder.toString().getBytes( StandardCharsets.UTF_8 ) );
+            out.getFD().sync(); // the entries are saved once this returns
+        }
+        entries += newEntries.size();
+    }//end append
+
+
+    /** Delete the journal, once its entries are in the configuration. */
+    void delete(){
+        if( file.delete() || !file.exists() ) entries = 0;
+    }
+
+
+    /** @return the number of entries in the journal */
+    int size(){
+        return entries;
+    }
+
+    //----------------------------------------------------
+
+
+    /* the entry of a line, or null if the line was cut by a crash */
+    private static String[] parse( String line ){
+        if( line == null ) return null;
+        try{
+            return GSON.fromJson( line, String[].class );
+        }catch( JsonParseException e ){
+            return null;
+        }
+    }
+
+
+    private static boolean isGeneration( String[] head, long generation ){
+        return head != null && head.length == 2 && head[ 0 ].equals( "#" ) && //
+                head[ 1 ].equals( Long.toString( generation ) );
+    }
+
+
+    private boolean endsWithNewline() throws IOException{
+        try( RandomAccessFile raf = new RandomAccessFile( file, "r" ) ){
+            raf.seek( raf.length() - 1 );
+            return raf.read() == '\n';
+        }
+    }
+}//end class
@@ -4,6 +4,7 @@ import com.google.gson.annotations.SerializedName;
 import gson.GsonContainable;
 import gson.GsonUtils;
 import network.AuthContainer;
+import utils.CybeUtils;
 
 import java.io.File;
 import java.util.Arrays;
@@ -53,7 +54,7 @@ public class GlobalConfig implements GsonContainable, AuthContainer{
 
 
     public boolean save(){
-        return GsonUtils.writeJsonFile( GLOBAL_CONFIG_FILEPATH, this );
+        return CybeUtils.writeJsonFile( GLOBAL_CONFIG_FILEPATH, this );
     }//end save
 
     /* *****************************************************************
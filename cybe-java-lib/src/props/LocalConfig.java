@@ -6,17 +6,39 @@ import gson.GsonContainable;
 import gson.GsonUtils;
 import org.apache.commons.io.FilenameUtils;
 import org.apache.commons.validator.routines.UrlValidator;
+import utils.CybeUtils;
 
 import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
 import java.util.*;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 
 /**
+ * The configuration of a course directory.
+ * <p/>
+ * The configuration can be modified from multiple threads (e.g. by the consumers of a pull): all the instance
+ * methods are synchronized, including the save, and the maps returned are copies.
+ * <p/>
+ * The changes of the file references (see {@link #putFileRef(String, String)}) are saved in a journal next to the
+ * configuration, so that saving a few new files does not rewrite the references of the whole course. See {@link
+ * FileRefJournal}. The full saves replace the file atomically (see {@link CybeUtils#writeAtomically(java.io.File,
+ * byte[])}): a crash never leaves a truncated configuration. The threads which modify the configuration often
+ * should use {@link #requestSave()}, which batches the saves.
+ *
  * @author: Lucy Linder
  * @date: 19.06.2014
  */
 public class LocalConfig implements GsonContainable, Closeable{
     public static final String LOCAL_CONF_FILENAME = ".cybe";
+    /* the journal is compacted when it has more entries than this and than the file references */
+    private static final int COMPACTION_MIN_ENTRIES = 1000;
+    /* the saves requested within this delay are made at once, see requestSave */
+    private static final long SAVE_DELAY_MS = 2000;
+    private static ScheduledExecutorService saver; // runs the requested saves, created on first use
 
     private String course;
 
@@ -35,12 +57,27 @@ public class LocalConfig implements GsonContainable, Closeable{
     @SerializedName( "origin" )
     private Set<String> origin = new TreeSet<>();
 
+    @SerializedName( "fingerprints" )
+    private Map<String, String> fingerprints = new TreeMap<>();
+
+    @SerializedName( "generation" )
+    private long generation; // incremented by each full save, see FileRefJournal
+
     // -- not serialized
     @DoNotSerialize
     private String filepath;
 
     @DoNotSerialize
-    private boolean modified;
+    private volatile boolean modified; // true if a change needs a full save
+
+    @DoNotSerialize
+    private List<String[]> pendingRefs; // the changes of the file references not in the journal yet
+
+    @DoNotSerialize
+    private FileRefJournal journal; // created on first use
+
+    @DoNotSerialize
+    private boolean saveRequested;
 
     //-------------------------------------------------------------
 
@@ -79,31 +116,32 @@ public class LocalConfig implements GsonContainable, Closeable{
 
 
     /** @return true if a modification was made since the last save, false otherwise */
-    public boolean isModified(){
-        return modified;
+    public synchronized boolean isModified(){
+        return modified || !pendingRefs().isEmpty();
     }
 
 
     /** @return the filepath of this config, i.e. were it will be saved. */
-    public String getFilepath(){
+    public synchronized String getFilepath(){
         return filepath;
     }
 
 
     /** @param filepath the filepath of this config, i.e. were it should be saved. */
-    public void setFilepath( String filepath ){
+    public synchronized void setFilepath( String filepath ){
         this.filepath = filepath;
+        this.journal = null;
     }
 
 
     /** @return the course name */
-    public String getCourse(){
+    public synchronized String getCourse(){
         return course;
     }
 
 
     /** @return the course url */
-    public String getCourseUrl(){
+    public synchronized String getCourseUrl(){
         return courseUrl;
     }
 
@@ -115,9 +153,10 @@ public class LocalConfig implements GsonContainable, Closeable{
      * @param uniqueId a unique file id (inode in Linux)
      * @param filename the original filename, as found on moodle/cyberlearn
      */
-    public void putFileRef( String uniqueId, String filename ){
-        this.inodesToNamesMapping.put( uniqueId, filename );
-        modified = true;
+    public synchronized void putFileRef( String uniqueId, String filename ){
+        if( !filename.equals( this.inodesToNamesMapping.put( uniqueId, filename ) ) ){
+            pendingRefs().add( FileRefJournal.put( uniqueId, filename ) );
+        }
     }
 
 
@@ -125,7 +164,7 @@ public class LocalConfig implements GsonContainable, Closeable{
      * @param id the unique file id (inode in Linux)
      * @return the original filename, as found on moodle/cyberlearn
      */
-    public String getFileFromId( String id ){
+    public synchronized String getFileFromId( String id ){
         return inodesToNamesMapping.containsKey( id ) ? inodesToNamesMapping.get( id ) : null;
     }//end getFileFromId
 
@@ -135,26 +174,44 @@ public class LocalConfig implements GsonContainable, Closeable{
      *
      * @param uniqueId the unique file id (inode in Linux)
      */
-    public void removeFileRef( String uniqueId ){
-        modified |= this.inodesToNamesMapping.remove( uniqueId ) != null;
+    public synchronized void removeFileRef( String uniqueId ){
+        if( this.inodesToNamesMapping.remove( uniqueId ) != null ){
+            pendingRefs().add( FileRefJournal.remove( uniqueId ) );
+        }
     }
 
 
     /** Clear the list of inodes-to-name mappings entirely. */
-    public void removeAllFileRefs(){
+    public synchronized void removeAllFileRefs(){
         if( this.inodesToNamesMapping.size() > 0 ){
             this.inodesToNamesMapping.clear();
-            modified = true;
+            pendingRefs().add( FileRefJournal.clear() );
         }
     }
 
 
+    /**
+     * Remove the references of the files which no longer exist. If a reference is removed, the fingerprints are
+     * cleared: the next pull must crawl the section of the deleted file to download it again.
+     *
+     * @param fileIds the ids of the files which exist
+     * @return true if the configuration changed as a result of the call, false otherwise.
+     */
+    public synchronized boolean retainFileRefs( Collection<String> fileIds ){
+        List<String> missing = new ArrayList<>( inodesToNamesMapping.keySet() );
+        missing.removeAll( fileIds );
+        missing.forEach( this::removeFileRef );
+        if( !missing.isEmpty() ) clearFingerprints();
+        return !missing.isEmpty();
+    }//end retainFileRefs
+
+
     /**
      * Remove from the inodes-to-name mapping all entry whose id are not in the given list.
      *
      * @param fileIds a list of file ids to keep
      */
-    public void cleanFileRefs( List<String> fileIds ){
+    public synchronized void cleanFileRefs( List<String> fileIds ){
         fileIds.forEach( this::removeFileRef );
     }//end cleanFileRefs
 
@@ -167,7 +224,7 @@ public class LocalConfig implements GsonContainable, Closeable{
      *            #filepath}.)
      * @return true if the configuration changed as a result of the call, false otherwise.
      */
-    public boolean addDir( String... dir ){
+    public synchronized boolean addDir( String... dir ){
         boolean m = this.dir.addAll( Arrays.asList( dir ) );
         modified |= m;
         return m;
@@ -179,7 +236,7 @@ public class LocalConfig implements GsonContainable, Closeable{
      *
      * @param dir the dir(s)
      */
-    public boolean removeDir( String... dir ){
+    public synchronized boolean removeDir( String... dir ){
         boolean m = this.dir.removeAll( Arrays.asList( dir ) );
         modified |= m;
         return m;
@@ -194,11 +251,12 @@ public class LocalConfig implements GsonContainable, Closeable{
      *              extension like "pdf", "txt" or "zip"
      * @return true if the configuration changed as a result of the call, false otherwise.
      */
-    public boolean addCtype( String... ctype ){
+    public synchronized boolean addCtype( String... ctype ){
         boolean ret = false;
         for( String c : ctype ){
             ret |= this.ctypes.add( c );
         }//end for
+        if( ret ) clearFingerprints();
         modified |= ret;
         return ret;
     }
@@ -211,11 +269,12 @@ public class LocalConfig implements GsonContainable, Closeable{
      *              #addCtype(String...)} to work.
      * @return true if the configuration changed as a result of the call, false otherwise.
      */
-    public boolean removeCtype( String... ctype ){
+    public synchronized boolean removeCtype( String... ctype ){
         boolean ret = false;
         for( String c : ctype ){
             ret |= this.ctypes.remove( c );
         }//end for
+        if( ret ) clearFingerprints();
         modified |= ret;
         return ret;
     }
@@ -228,11 +287,12 @@ public class LocalConfig implements GsonContainable, Closeable{
      *                ..")
      * @return true if the configuration changed as a result of the call, false otherwise.
      */
-    public boolean addOrigin( String... origins ){
+    public synchronized boolean addOrigin( String... origins ){
         boolean ret = false;
         for( String o : origins ){
             if( UrlValidator.getInstance().isValid( o ) ) ret |= this.origin.add( o );
         }//end for
+        if( ret ) clearFingerprints();
         modified |= ret;
         return ret;
     }
@@ -244,25 +304,53 @@ public class LocalConfig implements GsonContainable, Closeable{
      * @param origins the origins to remove.
      * @return true if the configuration changed as a result of the call, false otherwise.
      */
-    public boolean removeOrigin( String... origins ){
+    public synchronized boolean removeOrigin( String... origins ){
         boolean ret = false;
         for( String o : origins ){
             ret |= this.origin.remove( o );
         }//end for
+        if( ret ) clearFingerprints();
         modified |= ret;
         return ret;
     }
 
 
+    /**
+     * @return the fingerprints of the course page and its sections, as computed during the last complete pull (see
+     * {@link network.Fingerprints}). They are cleared when the content-types or origins change, or when a
+     * downloaded file is deleted (see {@link #retainFileRefs(java.util.Collection)}).
+     */
+    public synchronized Map<String, String> getFingerprints(){
+        return fingerprints != null ? Collections.unmodifiableMap( new TreeMap<>( fingerprints ) ) :
+                Collections.emptyMap();
+    }
+
+
+    /**
+     * Replace the fingerprints of the course page and its sections.
+     *
+     * @param fingerprints the fingerprints, keyed by page or section
+     * @return true if the configuration changed as a result of the call, false otherwise.
+     */
+    public synchronized boolean setFingerprints( Map<String, String> fingerprints ){
+        if( fingerprints.equals( this.fingerprints ) ) return false;
+        this.fingerprints = new TreeMap<>( fingerprints );
+        modified = true;
+        return true;
+    }
+
+
     /** @param course the course name */
-    public void setCourse( String course ){
+    public synchronized void setCourse( String course ){
         this.course = course;
+        modified = true;
     }
 
 
     /** @param courseUrl the url of the course's homepage */
-    public void setCourseUrl( String courseUrl ){
+    public synchronized void setCourseUrl( String courseUrl ){
         this.courseUrl = courseUrl;
+        modified = true;
     }
 
 
@@ -270,41 +358,86 @@ public class LocalConfig implements GsonContainable, Closeable{
 
 
     /**
-     * Save the configuration to {@link #getFilepath()}.
+     * Save the configuration to {@link #getFilepath()}. If only the file references changed, the changes are appended
+     * to the journal. Otherwise, or if the journal is too long, the whole configuration is written and the journal
+     * deleted.
      *
      * @return true upon success
      */
-    public boolean save(){
-        return this.save( this.filepath );
+    public synchronized boolean save(){
+        if( !isModified() ) return false;
+
+        List<String[]> pending = pendingRefs();
+        // the journal needs a snapshot to be replayed on
+        if( !modified && new File( filepath ).exists() && journal().size() + pending.size() <= //
+                Math.max( COMPACTION_MIN_ENTRIES, inodesToNamesMapping.size() ) ){
+            try{
+                journal().append( pending, generation );
+                pending.clear();
+                return true;
+            }catch( IOException e ){
+                System.err.printf( "Could not write the journal, saving the whole config: %s%n", e );
+            }
+        }
+
+        System.out.println( "Saving LocalConfig..." );
+        generation++; // the journal of the previous snapshot no longer applies, even if it can't be deleted
+        boolean ret = CybeUtils.writeJsonFile( filepath, this );
+        if( ret ){
+            // the snapshot contains all the changes
+            modified = false;
+            pending.clear();
+            journal().delete();
+        }else{
+            generation--;
+        }
+        return ret;
     }//end save
 
 
     /**
-     * Save the configuration to the given file.
+     * Save the configuration in the background, in a few seconds. The requests made in the meantime are coalesced
+     * into the same save, so this can be called after each modification, from any thread.
+     */
+    public synchronized void requestSave(){
+        if( saveRequested ) return;
+        saveRequested = true;
+        saver().schedule( () -> {
+            synchronized( this ){
+                saveRequested = false;
+                save();
+            }
+        }, SAVE_DELAY_MS, TimeUnit.MILLISECONDS );
+    }//end requestSave
+
+
+    /**
+     * Save the whole configuration to the given file (without journal).
      *
      * @param filepath the file path in which to save the configuration
      * @return true upon success
      */
-    public boolean save( String filepath ){
-        boolean ret = false;
-        if(modified){
-            System.out.println("Saving LocalConfig...");
-            ret = GsonUtils.writeJsonFile( filepath, this );
-            modified = !ret;
-        }
+    public synchronized boolean save( String filepath ){
+        if( filepath.equals( this.filepath ) ) return save();
+        boolean ret = CybeUtils.writeJsonFile( filepath, this );
+        if( ret ) new FileRefJournal( filepath ).delete(); // not for this content
         return ret;
     }//end save
 
 
     /**
-     * Load the configuration from the given file.
+     * Load the configuration from the given file, with the changes of its journal.
      *
      * @param path the path to the file
-     * @return the configuration object
+     * @return the configuration object, or null if the file could not be read
      */
     public static LocalConfig loadInstance( String path ){
         LocalConfig config = ( LocalConfig ) GsonUtils.getJsonFromFile( path, new LocalConfig() );
-        if( config != null ) config.filepath = path;
+        if( config != null ){
+            config.filepath = path;
+            if( config.inodesToNamesMapping == null ) config.inodesToNamesMapping = new HashMap<>();
+            config.journal().replay( config.inodesToNamesMapping, config.generation );
+        }
         return config;
     }//end loadInstance
 
@@ -317,7 +450,7 @@ public class LocalConfig implements GsonContainable, Closeable{
      * @param name  the filename
      * @return true if the file should be downloaded/is of interest, false otherwise.
      */
-    public boolean isFileAccepted( String ctype, String name ){
+    public synchronized boolean isFileAccepted( String ctype, String name ){
         String extension = FilenameUtils.getExtension( name );
         for( String ct : ctypes ){
             if( ct.contains( ctype ) || extension.equals( ct ) ) return true;
@@ -333,7 +466,41 @@ public class LocalConfig implements GsonContainable, Closeable{
      * #getFilepath()}).
      */
     @Override
-    public void close(){
-        if( modified ) save();
+    public synchronized void close(){
+        if( isModified() ) save();
+    }
+
+    //----------------------------------------------------
+
+
+    /* the fingerprints only cover the files accepted and still there: the next pull must crawl everything */
+    private void clearFingerprints(){
+        if( fingerprints == null || fingerprints.isEmpty() ) return;
+        fingerprints = new TreeMap<>();
+        modified = true;
+    }
+
+
+    private List<String[]> pendingRefs(){
+        if( pendingRefs == null ) pendingRefs = new ArrayList<>();
+        return pendingRefs;
+    }
+
+
+    private static synchronized ScheduledExecutorService saver(){
+        if( saver == null ){
+            saver = Executors.newSingleThreadScheduledExecutor( r -> {
+                Thread thread = new Thread( r, "cybe-config-saver" );
+                thread.setDaemon( true );
+                return thread;
+            } );
+        }
+        return saver;
+    }//end saver
+
+
+    private FileRefJournal journal(){
+        if( journal == null ) journal = new FileRefJournal( filepath );
+        return journal;
     }
 }//end class
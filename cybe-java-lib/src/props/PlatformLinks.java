@@ -22,9 +22,21 @@ public class PlatformLinks implements GsonContainable{
     @SerializedName("organisation_name")
     String name;
 
+    @SerializedName("backend")
+    String backend; // how to find the resources, see BACKEND_*
+
+    @SerializedName("ws_service")
+    String wsService; // the name of the moodle external service giving access to the web service
+
     public static final String CYBERLEARN_HES_SO = "cyberlearn.hes-so";
     public static final String MOODLE_UNIL = "moodle.unil";
 
+    /** Parse the html pages of the platform (the default). */
+    public static final String BACKEND_HTML = "html";
+    /** Use the moodle web service, parsing the html pages only if it is not available. */
+    public static final String BACKEND_WEBSERVICE = "webservice";
+    public static final String DEFAULT_WS_SERVICE = "moodle_mobile_app";
+
 
     public static PlatformLinks getInstance( String platform ) throws FileNotFoundException{
 
@@ -85,4 +97,43 @@ public class PlatformLinks implements GsonContainable{
     public String organisationName(){
         return name;
     }
+
+
+    /** @return true if the resources should be found using the moodle web service (see {@link #BACKEND_WEBSERVICE}) */
+    public boolean usesWebService(){
+        return BACKEND_WEBSERVICE.equals( backend );
+    }
+
+
+    /**
+     * Use the moodle web service to find the resources.
+     *
+     * @param service the name of the external service, or null for {@link #DEFAULT_WS_SERVICE}
+     */
+    public void setWebService( String service ){
+        this.backend = BACKEND_WEBSERVICE;
+        this.wsService = service;
+    }
+
+
+    /** @return the name of the external service to request a token for */
+    public String webServiceName(){
+        return wsService != null ? wsService : DEFAULT_WS_SERVICE;
+    }
+
+
+    public String webServiceUrl(){
+        return String.format( "%s/webservice/rest/server.php", homeUrl );
+    }
+
+
+    /** @return the prefix of the urls of the files given by the web service, which need the token */
+    public String webServiceFileUrl(){
+        return String.format( "%s/webservice/pluginfile.php", homeUrl );
+    }
+
+
+    public String webServiceTokenUrl(){
+        return String.format( "%s/login/token.php", homeUrl );
+    }
 }//end class
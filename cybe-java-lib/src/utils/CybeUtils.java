@@ -1,15 +1,17 @@
 package utils;
 
-import org.apache.commons.io.IOUtils;
+import gson.GsonUtils;
 import win.WinUtils;
 
 import java.io.File;
-import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
-import java.nio.file.Files;
-import java.nio.file.Paths;
-import java.nio.file.attribute.BasicFileAttributes;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
 
 /**
  * A bunch of useful  methods to deal with urls, files and such.
@@ -30,14 +32,80 @@ public class CybeUtils{
      * @param in   the inputstream
      */
     public static void saveResource( String path, InputStream in ){
-        try( FileOutputStream out = new FileOutputStream( new File( path ) ) ){
-            IOUtils.copy( in, out );
+        saveResource( path, in, -1 );
+    }//end saveResource
+
+
+    /**
+     * Write the content of an {@link InputStream} into a file, see {@link ResourceWriter}.
+     * Note that the inputstream won't be closed.
+     *
+     * @param path   the filepath
+     * @param in     the inputstream
+     * @param length the length of the content, if known (-1 otherwise). It is used to preallocate the file.
+     */
+    public static void saveResource( String path, InputStream in, long length ){
+        try{
+            ResourceWriter.write( new File( path ), in, length );
         }catch( Exception e ){
             e.printStackTrace();
         }
     }//end saveResource
 
 
+    /**
+     * Write a file atomically: the content is written to a temporary file in the same directory, flushed to the disk
+     * and then renamed over the target. A crash leaves either the old or the new content, never a truncated file.
+     *
+     * @param file    the file
+     * @param content the content
+     * @throws IOException if the file could not be written. The target is left untouched
+     */
+    public static void writeAtomically( File file, byte[] content ) throws IOException{
+        Path target = file.getAbsoluteFile().toPath();
+        Path tmp = Files.createTempFile( target.getParent(), "." + target.getFileName(), ".tmp" );
+        try{
+            try( FileChannel channel = FileChannel.open( tmp, StandardOpenOption.WRITE ) ){
+                ByteBuffer buffer = ByteBuffer.wrap( content );
+                while( buffer.hasRemaining() ) channel.write( buffer );
+                channel.force( true );
+            }
+            try{
+                Files.move( tmp, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING );
+            }catch( AtomicMoveNotSupportedException e ){
+                Files.move( tmp, target, StandardCopyOption.REPLACE_EXISTING );
+            }
+        }finally{
+            Files.deleteIfExists( tmp ); // if anything failed
+        }
+
+        // make the rename durable (not possible on windows)
+        try( FileChannel dir = FileChannel.open( target.getParent(), StandardOpenOption.READ ) ){
+            dir.force( true );
+        }catch( IOException ignored ){
+        }
+    }//end writeAtomically
+
+
+    /**
+     * Serialize an object to a json file atomically, see {@link #writeAtomically(java.io.File, byte[])}. This replaces
+     * {@link GsonUtils#writeJsonFile(String, Object)} for the files which must survive a crash (configurations).
+     *
+     * @param path   the path of the file
+     * @param object the object
+     * @return true upon success
+     */
+    public static boolean writeJsonFile( String path, Object object ){
+        try{
+            writeAtomically( new File( path ), GsonUtils.toJson( object ).getBytes( StandardCharsets.UTF_8 ) );
+            return true;
+        }catch( IOException | RuntimeException e ){
+            System.err.printf( "Could not write %s: %s%n", path, e );
+            return false;
+        }
+    }//end writeJsonFile
+
+
     /**
      * Return the last part of an url, i.e. everything after the last "/" and before the first # (anchor) or ?.
      * The potential parameters and anchors will be stripped.
@@ -51,6 +119,38 @@ public class CybeUtils{
     }//end lastPartOf
 
 
+    /**
+     * Normalise an url, so that two urls pointing to the same resource can be compared: the scheme and the host are
+     * lowercased, the default port (80 for http, 443 for https) and the anchor (#...) are removed.
+     * If the url is not valid, it is returned as is.
+     *
+     * @param url the url
+     * @return the normalised url
+     */
+    public static String normaliseUrl( String url ){
+        try{
+            URI uri = new URI( url.trim() );
+            if( !uri.isAbsolute() || uri.getHost() == null ) return url;
+
+            String scheme = uri.getScheme().toLowerCase();
+            int port = uri.getPort();
+            if( ( port == 80 && scheme.equals( "http" ) ) || ( port == 443 && scheme.equals( "https" ) ) ) port = -1;
+
+            // use the raw parts, so that the encoding of the path and the query is left untouched
+            StringBuilder builder = new StringBuilder( scheme ).append( "://" );
+            if( uri.getRawUserInfo() != null ) builder.append( uri.getRawUserInfo() ).append( '@' );
+            builder.append( uri.getHost().toLowerCase() );
+            if( port > 0 ) builder.append( ':' ).append( port );
+            builder.append( isNullOrEmpty( uri.getRawPath() ) ? "/" : uri.getRawPath() );
+            if( uri.getRawQuery() != null ) builder.append( '?' ).append( uri.getRawQuery() );
+            return builder.toString();
+
+        }catch( URISyntaxException e ){
+            return url;
+        }
+    }//end normaliseUrl
+
+
     /**
      * Join the
      *
@@ -101,30 +201,23 @@ public class CybeUtils{
     /**
      * return a string uniquely identifying the given file.
      * <ul>
-     *     <li>On linux: the inode number</li>
+     *     <li>On the systems with unix attributes (linux, mac, ...): the inode number, see {@link FileIdentity}</li>
      *     <li>On Windows/ntfs: {@code "[volumes serial nbr]:[file index high]:[file index low]"}</li>
      * </ul>
-     * The other systems are not supported. TODO
      *
      * @param filepath the path to the file
-     * @return the unique id  or an empty string if the system is not supported
+     * @return the unique id, null if the inode of the file could not be read, or an empty string on the systems
+     * which are neither unix nor Windows
      */
     public static String getUniqueFileId( String filepath ){
-        String id = "";
-        try{
-            OS os = getOs();
-            if( os == OS.LINUX ){
-                id = Files.readAttributes( Paths.get( filepath ), BasicFileAttributes.class ).fileKey()
-                        .toString();
-                id = id.replaceAll( ".*,ino=", "" ).replace( ")", "" );
-                return id.isEmpty() ? null : id;
-
-            }else if( os == OS.WINDOWS ){
-                id = WinUtils.getUniqueFileId( filepath );
-            }
-        }catch( IOException ignored ){
+        if( FileIdentity.isSupported() ){
+            long inode = FileIdentity.inode( Paths.get( filepath ) );
+            return inode < 0 ? null : Long.toString( inode );
+
+        }else if( getOs() == OS.WINDOWS ){
+            return WinUtils.getUniqueFileId( filepath );
         }
-        return id;
+        return "";
     }//end getUniqueFileId
 
 
@@ -0,0 +1,126 @@
+package utils;
+
+import com.google.gson.annotations.SerializedName;
+import gson.GsonContainable;
+import gson.GsonUtils;
+
+import java.io.File;
+import java.io.FileFilter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * The files of a directory with their unique id (see {@link CybeUtils#getUniqueFileId(String)}), cached in the
+ * directory ({@value #FILENAME}).
+ * <p/>
+ * Getting the id of a file is a system call, so listing a course directory with thousands of files takes a while.
+ * Reading the names only is cheap: as long as the names of the files are the ones of the last listing, the ids are
+ * read from the cache. The modification date of the directory can't be used, since every pull writes the cybe
+ * metadata next to the resources. The metadata ({@code .cybe*}) and the temporary files of the atomic writes are
+ * never listed. A file replaced under the same name keeps its cached id until a file is added, removed or renamed.
+ */
+public class FileIdIndex implements GsonContainable{
+
+    public static final String FILENAME = ".cybe.files";
+    /* the files of cybe itself: local config, journal, resolution index, this cache */
+    private static final String METADATA_PREFIX = ".cybe";
+
+    @SerializedName( "names" )
+    private Set<String> names; // the names of the listing, subdirectories included
+
+    @SerializedName( "files" )
+    private Map<String, String> files; // file name => unique id
+
+
+    public FileIdIndex(){
+    }
+
+    //----------------------------------------------------
+
+
+    /**
+     * List the files of a directory (not recursive), from the cache if the names did not change since the last
+     * listing. The cache is updated otherwise.
+     *
+     * @param directory the directory
+     * @param filter    the files to list, e.g. without the unfinished downloads. The directories, the cybe metadata
+     *                  and the temporary files are never listed.
+     * @return a map (file name, unique id)
+     */
+    public static Map<String, String> list( String directory, FileFilter filter ){
+        File dir = new File( directory );
+        File cache = new File( dir, FILENAME );
+        if( !dir.isDirectory() ) return new HashMap<>();
+
+        Set<String> names;
+        try{
+            names = names( dir.toPath(), filter );
+        }catch( IOException e ){
+            return new HashMap<>();
+        }
+
+        FileIdIndex index = read( cache );
+        if( index != null && names.equals( index.names ) ) return new HashMap<>( index.files );
+
+        Map<String, String> listing;
+        try{
+            listing = FileIdentity.identify( dir.toPath(), path -> names.contains( path.getFileName().toString() ) );
+        }catch( IOException e ){
+            return new HashMap<>();
+        }
+        write( cache, names, listing );
+        return new HashMap<>( listing );
+    }//end list
+
+
+    /**
+     * @param name a file name
+     * @return true if the file is not a resource: cybe metadata or temporary file of an atomic write
+     */
+    public static boolean isInternal( String name ){
+        return name.startsWith( METADATA_PREFIX ) || //
+                name.startsWith( "." ) && ( name.endsWith( ".tmp" ) || name.endsWith( ".link" ) );
+    }
+
+    //----------------------------------------------------
+
+
+    /* the names of the files to list, without stat (the directories are left out by identify) */
+    private static Set<String> names( Path dir, FileFilter filter ) throws IOException{
+        Set<String> names = new HashSet<>();
+        try( DirectoryStream<Path> stream = Files.newDirectoryStream( dir ) ){
+            for( Path path : stream ){
+                String name = path.getFileName().toString();
+                if( !isInternal( name ) && filter.accept( path.toFile() ) ) names.add( name );
+            }//end for
+        }
+        return names;
+    }//end names
+
+
+    /* the cached listing, or null if there is none */
+    private static FileIdIndex read( File cache ){
+        if( !cache.isFile() ) return null;
+        FileIdIndex index = ( FileIdIndex ) GsonUtils.getJsonFromFile( cache.getPath(), new FileIdIndex() );
+        return index != null && index.names != null && index.files != null ? index : null;
+    }//end read
+
+
+    private static void write( File cache, Set<String> names, Map<String, String> listing ){
+        FileIdIndex index = new FileIdIndex();
+        index.names = names;
+        index.files = listing;
+        try{
+            CybeUtils.writeAtomically( cache, GsonUtils.toJson( index ).getBytes( StandardCharsets.UTF_8 ) );
+        }catch( IOException | RuntimeException e ){
+            // not writeable: list it again next time
+        }
+    }//end write
+}//end class
@@ -0,0 +1,105 @@
+package utils;
+
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Predicate;
+import java.util.stream.Stream;
+
+/**
+ * The unique ids of the files, see {@link CybeUtils#getUniqueFileId(String)}.
+ * <p/>
+ * On the unix systems, the id is the inode number, read as a numeric attribute ({@code unix:ino}): a single stat per
+ * file, without parsing the string of the file key. The files of a directory can be identified in one pass (see
+ * {@link #identify(java.nio.file.Path, java.util.function.Predicate)}), which also tells the directories apart
+ * without a second stat.
+ * <p/>
+ * The ids are given as strings, the format of the local configs: the decimal inode number on unix, the volume and
+ * file index on Windows.
+ */
+public final class FileIdentity{
+
+    /* true if the unix attributes are available (linux, mac, ...) */
+    private static final boolean UNIX = FileSystems.getDefault().supportedFileAttributeViews().contains( "unix" );
+    /* from this number of files, the ids are read in parallel */
+    private static final int PARALLEL_THRESHOLD = 256;
+
+
+    private FileIdentity(){
+    }
+
+    //----------------------------------------------------
+
+
+    /** @return true if the inode numbers can be read on this system */
+    public static boolean isSupported(){
+        return UNIX;
+    }
+
+
+    /**
+     * @param path a file
+     * @return its inode number, or -1 if it is unknown or the system is not supported (see {@link #isSupported()})
+     */
+    public static long inode( Path path ){
+        if( !UNIX ) return -1;
+        try{
+            return ( Long ) Files.getAttribute( path, "unix:ino" );
+        }catch( IOException | RuntimeException e ){
+            return -1;
+        }
+    }//end inode
+
+
+    /**
+     * Get the ids of the files of a directory (not recursive), in one pass. Big directories are read in parallel.
+     *
+     * @param dir    the directory
+     * @param filter the files to identify. The subdirectories are never included.
+     * @return a map (file name, unique id). The files whose id could not be read are left out.
+     * @throws IOException if the directory could not be read
+     */
+    public static Map<String, String> identify( Path dir, Predicate<Path> filter ) throws IOException{
+        List<Path> paths = new ArrayList<>();
+        try( DirectoryStream<Path> stream = Files.newDirectoryStream( dir ) ){
+            stream.forEach( path -> {
+                if( filter.test( path ) ) paths.add( path );
+            } );
+        }
+
+        Stream<Path> stream = paths.stream();
+        if( paths.size() >= PARALLEL_THRESHOLD ) stream = stream.parallel();
+        Map<String, String> ids = new ConcurrentHashMap<>();
+        stream.forEach( path -> {
+            String id = fileId( path );
+            if( id != null ) ids.put( path.getFileName().toString(), id );
+        } );
+        return ids;
+    }//end identify
+
+    //----------------------------------------------------
+
+
+    /* the id of a file, or null if it is a directory or the id is unknown */
+    private static String fileId( Path path ){
+        if( UNIX ){
+            try{
+                Map<String, Object> attributes = Files.readAttributes( path, "unix:ino,isDirectory" );
+                if( Boolean.TRUE.equals( attributes.get( "isDirectory" ) ) ) return null;
+                return Long.toString( ( Long ) attributes.get( "ino" ) );
+            }catch( IOException | RuntimeException e ){
+                return null;
+            }
+        }
+
+        if( Files.isDirectory( path ) ) return null;
+        String id = CybeUtils.getUniqueFileId( path.toString() );
+        return CybeUtils.isNullOrEmpty( id ) ? null : id;
+    }//end fileId
+}//end class
@@ -0,0 +1,184 @@
+package utils;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.function.LongConsumer;
+
+/**
+ * Write the content of an {@link InputStream} into a file, using one of the {@link Mode}s below.
+ * <p/>
+ * If the length of the content is known in advance, the file is preallocated, which avoids the fragmentation of big
+ * files and fails early if the disk is full. The file is truncated to the number of bytes really written in the end.
+ */
+public class ResourceWriter{
+
+    /** How the bytes are moved from the stream to the file. */
+    public enum Mode{
+        /** classic copy through a small heap buffer */
+        STREAM,
+        /** {@link FileChannel#transferFrom(ReadableByteChannel, long, long)}, the default */
+        TRANSFER,
+        /** read into pooled direct buffers and write them to the file channel */
+        DIRECT
+    }
+
+    public static final Mode DEFAULT_MODE = Mode.TRANSFER;
+
+    /* maximum number of bytes asked to transferFrom at once */
+    private static final long TRANSFER_CHUNK_SIZE = 1024 * 1024;
+    /* size of the heap buffer used in STREAM mode */
+    private static final int STREAM_BUFFER_SIZE = 4096;
+    /* size and number of the pooled direct buffers */
+    private static final int DIRECT_BUFFER_SIZE = 64 * 1024;
+    private static final int DIRECT_BUFFER_POOL_SIZE = 16;
+
+    private static final BlockingQueue<ByteBuffer> bufferPool = new ArrayBlockingQueue<>( DIRECT_BUFFER_POOL_SIZE );
+
+
+    /**
+     * Write the content of the stream into the file, using the {@link #DEFAULT_MODE}. The stream won't be closed.
+     *
+     * @param target the file, which will be created or overwritten
+     * @param in     the stream
+     * @param length the length of the content, or -1 if unknown
+     * @return the number of bytes written
+     * @throws IOException
+     */
+    public static long write( File target, InputStream in, long length ) throws IOException{
+        return write( target, in, length, DEFAULT_MODE );
+    }
+
+
+    /**
+     * Write the content of the stream into the file. The stream won't be closed.
+     *
+     * @param target the file, which will be created or overwritten
+     * @param in     the stream
+     * @param length the length of the content, or -1 if unknown
+     * @param mode   the write mode
+     * @return the number of bytes written
+     * @throws IOException
+     */
+    public static long write( File target, InputStream in, long length, Mode mode ) throws IOException{
+        try( RandomAccessFile file = new RandomAccessFile( target, "rw" ) ){
+            file.setLength( length > 0 ? length : 0 ); // preallocate (or truncate the old content)
+            long written = write( file.getChannel(), 0, in, mode );
+            if( written != file.length() ) file.setLength( written );
+            return written;
+        }
+    }//end write
+
+
+    /**
+     * Write the content of the stream into the channel, starting at the given position. Neither the stream nor the
+     * channel are closed.
+     *
+     * @param channel  the file channel
+     * @param position the position of the first byte in the file
+     * @param in       the stream
+     * @param mode     the write mode
+     * @return the number of bytes written
+     * @throws IOException
+     */
+    public static long write( FileChannel channel, long position, InputStream in, Mode mode ) throws IOException{
+        return write( channel, position, in, mode, w -> {
+        } );
+    }//end write
+
+
+    /**
+     * Write the content of the stream into the channel, starting at the given position. Neither the stream nor the
+     * channel are closed.
+     *
+     * @param channel  the file channel
+     * @param position the position of the first byte in the file
+     * @param in       the stream
+     * @param mode     the write mode
+     * @param progress called after each chunk with the number of bytes written so far
+     * @return the number of bytes written
+     * @throws IOException
+     */
+    public static long write( FileChannel channel, long position, InputStream in, Mode mode,
+                              LongConsumer progress ) throws IOException{
+        switch( mode ){
+            case STREAM:
+                return writeStream( channel, position, in, progress );
+            case DIRECT:
+                return writeDirect( channel, position, in, progress );
+            default:
+                return transfer( channel, position, in, progress );
+        }
+    }//end write
+
+    /* *****************************************************************
+     * private utils
+     * ****************************************************************/
+
+
+    private static long writeStream( FileChannel channel, long position, InputStream in,
+                                     LongConsumer progress ) throws IOException{
+        byte[] buffer = new byte[ STREAM_BUFFER_SIZE ];
+        long written = 0;
+        int n;
+        while( ( n = in.read( buffer ) ) >= 0 ){
+            // positional writes: several threads may write different parts of the same channel
+            ByteBuffer chunk = ByteBuffer.wrap( buffer, 0, n );
+            while( chunk.hasRemaining() ){
+                written += channel.write( chunk, position + written );
+            }//end while
+            progress.accept( written );
+        }//end while
+        return written;
+    }//end writeStream
+
+
+    private static long transfer( FileChannel channel, long position, InputStream in,
+                                  LongConsumer progress ) throws IOException{
+        ReadableByteChannel source = Channels.newChannel( in );
+        long written = 0, n;
+        // a blocking source channel only returns 0 at the end of the stream
+        while( ( n = channel.transferFrom( source, position + written, TRANSFER_CHUNK_SIZE ) ) > 0 ){
+            written += n;
+            progress.accept( written );
+        }//end while
+        return written;
+    }//end transfer
+
+
+    private static long writeDirect( FileChannel channel, long position, InputStream in,
+                                     LongConsumer progress ) throws IOException{
+        ReadableByteChannel source = Channels.newChannel( in );
+        ByteBuffer buffer = borrowBuffer();
+        long written = 0;
+        try{
+            while( source.read( buffer ) >= 0 ){
+                buffer.flip();
+                while( buffer.hasRemaining() ){
+                    written += channel.write( buffer, position + written );
+                }//end while
+                buffer.clear();
+                progress.accept( written );
+            }//end while
+        }finally{
+            releaseBuffer( buffer );
+        }
+        return written;
+    }//end writeDirect
+
+
+    private static ByteBuffer borrowBuffer(){
+        ByteBuffer buffer = bufferPool.poll();
+        return buffer != null ? buffer : ByteBuffer.allocateDirect( DIRECT_BUFFER_SIZE );
+    }
+
+
+    private static void releaseBuffer( ByteBuffer buffer ){
+        buffer.clear();
+        bufferPool.offer( buffer ); // if the pool is full, the buffer is simply dropped
+    }
+}//end class
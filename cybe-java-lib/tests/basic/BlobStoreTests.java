@@ -0,0 +1,66 @@
+package basic;
+
+import network.BlobStore;
+import network.ResourceStream;
+import org.apache.commons.io.FileUtils;
+import org.apache.http.HttpHeaders;
+import org.apache.http.HttpResponse;
+import org.apache.http.HttpVersion;
+import org.apache.http.entity.ByteArrayEntity;
+import org.apache.http.message.BasicHttpResponse;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+
+public class BlobStoreTests{
+
+    private File dir;
+
+
+    @Before
+    public void init() throws IOException{
+        dir = Files.createTempDirectory( "cybe-blobs-test" ).toFile();
+    }//end init
+
+
+    @After
+    public void cleanUp() throws IOException{
+        FileUtils.deleteDirectory( dir );
+    }//end cleanUp
+
+
+    @Test
+    public void linksSameContent() throws IOException{
+        File a = new File( dir, "a.pdf" ), b = new File( dir, "b.pdf" ), c = new File( dir, "c.pdf" );
+        BlobStore store = BlobStore.loadInstance( new File( dir, "blobs" ).getPath() );
+
+        // the same content downloaded twice: the second file becomes a link to the blob of the first
+        FileUtils.writeStringToFile( a, "slides" );
+        FileUtils.writeStringToFile( b, "slides" );
+        String hash = store.add( a, stream( "http://a", "\"h1\"", "slides" ), blob -> true );
+        Assert.assertEquals( hash, store.add( b, stream( "http://b", "\"h2\"", "slides" ), blob -> true ) );
+        Assert.assertTrue( Files.isSameFile( a.toPath(), b.toPath() ) );
+
+        // the validators of a known content are found again, even from another url (strong etag)
+        store.save();
+        store = BlobStore.loadInstance( new File( dir, "blobs" ).getPath() );
+        Assert.assertEquals( hash, store.find( stream( "http://c", "\"h1\"", "slides" ) ) );
+        Assert.assertNull( store.find( stream( "http://a", "\"h3\"", "other" ) ) );
+        Assert.assertTrue( store.link( hash, c ) );
+        Assert.assertEquals( "slides", FileUtils.readFileToString( c ) );
+    }//end linksSameContent
+
+
+    private ResourceStream stream( String url, String etag, String content ){
+        HttpResponse response = new BasicHttpResponse( HttpVersion.HTTP_1_1, 200, "OK" );
+        response.setEntity( new ByteArrayEntity( content.getBytes() ) );
+        response.addHeader( HttpHeaders.ETAG, etag );
+        return new ResourceStream( new ByteArrayInputStream( content.getBytes() ), response, url );
+    }//end stream
+}//end class
@@ -0,0 +1,90 @@
+package basic;
+
+import network.DiskCacheStorage;
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+import org.apache.http.Header;
+import org.apache.http.HttpVersion;
+import org.apache.http.client.cache.HttpCacheEntry;
+import org.apache.http.client.cache.Resource;
+import org.apache.http.impl.client.cache.FileResourceFactory;
+import org.apache.http.message.BasicStatusLine;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Date;
+
+public class CacheTests{
+
+    private File dir;
+    private FileResourceFactory resourceFactory;
+
+
+    @Before
+    public void init() throws IOException{
+        dir = Files.createTempDirectory( "cybe-cache-test" ).toFile();
+        resourceFactory = new FileResourceFactory( dir );
+    }//end init
+
+
+    @After
+    public void cleanUp() throws IOException{
+        FileUtils.deleteDirectory( dir );
+    }//end cleanUp
+
+
+    @Test
+    public void persistAcrossInstances() throws IOException{
+        DiskCacheStorage storage = new DiskCacheStorage( new File( dir, "entries" ), 10, 1024 * 1024, 60000 );
+        storage.putEntry( "http://a", entry( "http://a", "page a" ) );
+
+        // a new instance finds the entry written by the first one
+        storage = new DiskCacheStorage( new File( dir, "entries" ), 10, 1024 * 1024, 60000 );
+        Assert.assertEquals( 1, storage.size() );
+        HttpCacheEntry entry = storage.getEntry( "http://a" );
+        Assert.assertNotNull( entry );
+        Assert.assertEquals( "page a", IOUtils.toString( entry.getResource().getInputStream() ) );
+    }//end persistAcrossInstances
+
+
+    @Test
+    public void evictLeastRecentlyUsed() throws IOException{
+        DiskCacheStorage storage = new DiskCacheStorage( new File( dir, "entries" ), 2, 1024 * 1024, 60000 );
+        storage.putEntry( "http://a", entry( "http://a", "page a" ) );
+        storage.putEntry( "http://b", entry( "http://b", "page b" ) );
+        storage.getEntry( "http://a" ); // b is now the least recently used
+        storage.putEntry( "http://c", entry( "http://c", "page c" ) );
+
+        Assert.assertEquals( 2, storage.size() );
+        Assert.assertNotNull( storage.getEntry( "http://a" ) );
+        Assert.assertNull( storage.getEntry( "http://b" ) );
+        Assert.assertNotNull( storage.getEntry( "http://c" ) );
+    }//end evictLeastRecentlyUsed
+
+
+    @Test
+    public void expiredEntriesAreDropped() throws IOException{
+        DiskCacheStorage storage = new DiskCacheStorage( new File( dir, "entries" ), 10, 1024 * 1024, 1 );
+        Date old = new Date( System.currentTimeMillis() - 1000 );
+        Resource resource = resourceFactory.generate( "http://a", new ByteArrayInputStream( "a".getBytes() ), null );
+        storage.putEntry( "http://a", new HttpCacheEntry( old, old, //
+                new BasicStatusLine( HttpVersion.HTTP_1_1, 200, "OK" ), new Header[ 0 ], resource ) );
+
+        Assert.assertNull( storage.getEntry( "http://a" ) );
+        Assert.assertEquals( 0, storage.size() );
+    }//end expiredEntriesAreDropped
+
+
+    private HttpCacheEntry entry( String url, String content ) throws IOException{
+        Date now = new Date();
+        Resource resource = resourceFactory.generate( url, new ByteArrayInputStream( content.getBytes() ), null );
+        return new HttpCacheEntry( now, now, new BasicStatusLine( HttpVersion.HTTP_1_1, 200, "OK" ),
+                new Header[ 0 ], resource );
+    }//end entry
+}//end class
@@ -7,7 +7,12 @@ import org.junit.Test;
 import props.LocalConfig;
 import utils.CybeUtils;
 
+import java.io.File;
+import java.io.FileWriter;
 import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Collections;
 
 /**
  * @author: Lucy Linder
@@ -38,6 +43,116 @@ public class ConfigTests{
     }
 
 
+    @Test
+    public void journalTest() throws IOException{
+        File file = File.createTempFile( "cybe-journal-test", "" );
+        File journal = new File( file.getPath() + ".journal" );
+        Assert.assertTrue( file.delete() ); // a new config
+        file.deleteOnExit();
+        journal.deleteOnExit();
+
+        LocalConfig conf = new LocalConfig( file.getPath(), "course", "http://localhost/course/view.php?id=1" );
+        conf.putFileRef( "1", "a.pdf" );
+        Assert.assertTrue( conf.save() ); // full save
+        Assert.assertFalse( journal.exists() );
+
+        // only the changes of the references are written
+        String snapshot = new String( Files.readAllBytes( file.toPath() ), "UTF-8" );
+        conf.putFileRef( "2", "b.pdf" );
+        conf.putFileRef( "3", "c\td.pdf" );
+        conf.removeFileRef( "1" );
+        Assert.assertTrue( conf.save() );
+        Assert.assertFalse( conf.isModified() );
+        Assert.assertEquals( snapshot, new String( Files.readAllBytes( file.toPath() ), "UTF-8" ) );
+        Assert.assertEquals( 4, Files.readAllLines( journal.toPath() ).size() ); // the generation + 3 entries
+
+        // replayed on load, even after a crash in the middle of a line
+        try( FileWriter writer = new FileWriter( journal, true ) ){
+            writer.write( "[\"+\",\"4\"," );
+        }
+        conf = LocalConfig.loadInstance( file.getPath() );
+        Assert.assertNull( conf.getFileFromId( "1" ) );
+        Assert.assertEquals( "b.pdf", conf.getFileFromId( "2" ) );
+        Assert.assertEquals( "c\td.pdf", conf.getFileFromId( "3" ) );
+
+        // compaction once the journal is longer than the references
+        for( int i = 0; i < 1200; i++ ){
+            conf.putFileRef( "2", "b" + i + ".pdf" );
+            conf.save();
+        }//end for
+        Assert.assertTrue( Files.readAllLines( journal.toPath() ).size() < 1000 );
+        Assert.assertEquals( "b1199.pdf", LocalConfig.loadInstance( file.getPath() ).getFileFromId( "2" ) );
+    }//end journalTest
+
+
+    @Test
+    public void staleJournalTest() throws IOException{
+        File file = File.createTempFile( "cybe-journal-test", "" );
+        File journal = new File( file.getPath() + ".journal" );
+        Assert.assertTrue( file.delete() );
+        file.deleteOnExit();
+        journal.deleteOnExit();
+
+        LocalConfig conf = new LocalConfig( file.getPath(), "course", "http://localhost/course/view.php?id=1" );
+        conf.putFileRef( "1", "a.pdf" );
+        Assert.assertTrue( conf.save() );
+        conf.putFileRef( "2", "b.pdf" );
+        conf.removeAllFileRefs();
+        conf.putFileRef( "3", "c.pdf" );
+        Assert.assertTrue( conf.save() ); // journaled
+        byte[] stale = Files.readAllBytes( journal.toPath() );
+
+        // a full save, then a crash before the journal is deleted
+        conf.putFileRef( "1", "a.pdf" );
+        conf.removeFileRef( "3" );
+        conf.setCourse( "other course" );
+        Assert.assertTrue( conf.save() );
+        Files.write( journal.toPath(), stale );
+
+        conf = LocalConfig.loadInstance( file.getPath() );
+        Assert.assertEquals( "a.pdf", conf.getFileFromId( "1" ) );
+        Assert.assertNull( conf.getFileFromId( "3" ) );
+        Assert.assertFalse( journal.exists() );
+    }//end staleJournalTest
+
+
+    @Test
+    public void fingerprintsClearedBySettingsTest(){
+        LocalConfig conf = new LocalConfig( "unused", "course", "http://localhost/course/view.php?id=1" );
+        conf.addCtype( "pdf" );
+        conf.setFingerprints( Collections.singletonMap( "page", "hash" ) );
+
+        // the sections skipped so far could contain files of the new type
+        Assert.assertFalse( conf.addCtype( "pdf" ) );
+        Assert.assertFalse( conf.getFingerprints().isEmpty() );
+        Assert.assertTrue( conf.addCtype( "zip" ) );
+        Assert.assertTrue( conf.getFingerprints().isEmpty() );
+
+        conf.setFingerprints( Collections.singletonMap( "page", "hash" ) );
+        Assert.assertTrue( conf.addOrigin( "http://cyberlearn.hes-so.ch/course/view.php?id=2" ) );
+        Assert.assertTrue( conf.getFingerprints().isEmpty() );
+    }//end fingerprintsClearedBySettingsTest
+
+
+    @Test
+    public void fingerprintsClearedByMissingFilesTest(){
+        LocalConfig conf = new LocalConfig( "unused", "course", "http://localhost/course/view.php?id=1" );
+        conf.putFileRef( "1", "a.pdf" );
+        conf.putFileRef( "2", "b.pdf" );
+        conf.setFingerprints( Collections.singletonMap( "page", "hash" ) );
+
+        // all the files are there: the fingerprints can be trusted
+        Assert.assertFalse( conf.retainFileRefs( Arrays.asList( "1", "2", "3" ) ) );
+        Assert.assertFalse( conf.getFingerprints().isEmpty() );
+
+        // b.pdf was deleted: its section must be crawled again
+        Assert.assertTrue( conf.retainFileRefs( Collections.singletonList( "1" ) ) );
+        Assert.assertNull( conf.getFileFromId( "2" ) );
+        Assert.assertEquals( "a.pdf", conf.getFileFromId( "1" ) );
+        Assert.assertTrue( conf.getFingerprints().isEmpty() );
+    }//end fingerprintsClearedByMissingFilesTest
+
+
     @Test
     public void testFileUniqueId() throws IOException{
         String id = CybeUtils.getUniqueFileId( cybeFile );
@@ -0,0 +1,68 @@
+package basic;
+
+import network.LinkExtractor;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
+
+public class LinkExtractorTests{
+
+    private static final String PAGE = "<!DOCTYPE html><html><head>" +
+            "<script>var s = '<a href=\"script.pdf\">';</script>" +
+            "<!-- <a href=\"comment.pdf\"> -->" +
+            "</head><body>" +
+            "<a href=\"before.pdf\">before</a>" +
+            "<div id=\"region-main\"><div class='section'>" +
+            "<a href=\"http://x/mod/resource/view.php?id=1&amp;redirect=1\">1</a>" +
+            "<img src=x.png alt=\"<not a tag>\"/><br>" +
+            "<A HREF=two.pdf>2</A><a name=\"noref\">3</a>" +
+            "</div></div>" +
+            "<a href=\"after.pdf\">after</a>" +
+            "</body></html>";
+
+
+    @Test
+    public void regionLinksTest() throws IOException{
+        List<String> links = new ArrayList<>();
+        List<String> tags = new ArrayList<>();
+        LinkExtractor.Region main = new LinkExtractor.Region( tag -> "region-main".equals( tag.attr( "id" ) ) );
+
+        LinkExtractor.scan( new StringReader( PAGE ), tag -> {
+            tags.add( ( tag.isClosing() ? "/" : "" ) + tag.getName() );
+            if( main.update( tag ) && tag.is( "a" ) && tag.attr( "href" ) != null ) links.add( tag.attr( "href" ) );
+            return !main.isClosed();
+        } );
+
+        // scripts and comments are skipped, entities decoded, names are lowercase
+        Assert.assertEquals( 2, links.size() );
+        Assert.assertEquals( "http://x/mod/resource/view.php?id=1&redirect=1", links.get( 0 ) );
+        Assert.assertEquals( "two.pdf", links.get( 1 ) );
+        // the reading stopped at the end of the region: the last tag read is </div>, "after" was never read
+        Assert.assertEquals( "/div", tags.get( tags.size() - 1 ) );
+        Assert.assertEquals( 4, tags.stream().filter( "a"::equals ).count() );
+    }//end regionLinksTest
+
+
+    @Test
+    public void classesAndUnclosedTagsTest() throws IOException{
+        String html = "<ul><li class=\"type_course depth_3\"><p><a title=\"Course A\" href=\"a\">A</a></li>" +
+                "<li class=\"type_other\"><a title=\"Other\" href=\"o\">O</a></li>" +
+                "<li class='type_course'><a title='Course B' href='b'>B</a></li></ul>";
+        List<String> titles = new ArrayList<>();
+        LinkExtractor.Region course = new LinkExtractor.Region( tag -> tag.is( "li" ) && //
+                tag.hasClass( "type_course" ) );
+
+        LinkExtractor.scan( new StringReader( html ), tag -> {
+            if( course.update( tag ) && tag.is( "a" ) ) titles.add( tag.attr( "title" ) );
+            return true;
+        } );
+
+        Assert.assertEquals( 2, titles.size() );
+        Assert.assertEquals( "Course A", titles.get( 0 ) );
+        Assert.assertEquals( "Course B", titles.get( 1 ) );
+    }//end classesAndUnclosedTagsTest
+}//end class
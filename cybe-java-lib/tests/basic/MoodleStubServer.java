@@ -0,0 +1,143 @@
+package basic;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+
+/**
+ * A local http server imitating a moodle platform, for the tests: the web service (token, site info, courses and
+ * course contents), the course pages and the files.
+ * <p/>
+ * The course pages and the web service answers are given by the test. Every other path is a file: its content is
+ * its path. All the requests are recorded.
+ */
+public class MoodleStubServer implements Closeable{
+
+    public static final String TOKEN = "stub-token";
+
+    private final HttpServer server;
+    private final List<String> requests = new CopyOnWriteArrayList<>();
+    private final Map<String, String> pages = new ConcurrentHashMap<>(); // path + query => html
+    private final Map<String, String> functions = new ConcurrentHashMap<>(); // wsfunction + params => json
+    private volatile boolean tokenEnabled = true;
+
+
+    public MoodleStubServer() throws IOException{
+        server = HttpServer.create( new InetSocketAddress( "localhost", 0 ), 0 );
+        server.setExecutor( Executors.newCachedThreadPool( r -> {
+            Thread thread = new Thread( r, "moodle-stub" );
+            thread.setDaemon( true );
+            return thread;
+        } ) );
+        server.createContext( "/", this::handle );
+        server.start();
+    }
+
+
+    /** @return the home url of the platform, without trailing slash */
+    public String getHomeUrl(){
+        return "http://localhost:" + server.getAddress().getPort();
+    }
+
+
+    /** @return the requests received so far (path and query) */
+    public List<String> getRequests(){
+        return requests;
+    }
+
+
+    /** @param path a path (and query), e.g. /course/view.php?id=2, served as an html page */
+    public void addPage( String path, String html ){
+        pages.put( path, html );
+    }
+
+
+    /**
+     * @param function the name of the web service function, with its parameters if any (e.g.
+     *                 "core_course_get_contents courseid=2")
+     * @param json     the answer
+     */
+    public void addFunction( String function, String json ){
+        functions.put( function, json );
+    }
+
+
+    /** @param enabled false to refuse to give a token, like a platform without web service */
+    public void setTokenEnabled( boolean enabled ){
+        this.tokenEnabled = enabled;
+    }
+
+
+    @Override
+    public void close(){
+        server.stop( 0 );
+    }
+
+    //----------------------------------------------------
+
+
+    private void handle( HttpExchange exchange ) throws IOException{
+        String path = exchange.getRequestURI().getRawPath();
+        String query = exchange.getRequestURI().getRawQuery();
+        requests.add( path + ( query != null ? "?" + query : "" ) );
+
+        if( path.equals( "/login/token.php" ) ){
+            reply( exchange, "application/json", tokenEnabled ? "{\"token\":\"" + TOKEN + "\"}" : //
+                    "{\"error\":\"Web services must be enabled in Advanced features.\"}" );
+
+        }else if( path.equals( "/webservice/rest/server.php" ) ){
+            Map<String, String> params = parseQuery( query );
+            if( !TOKEN.equals( params.remove( "wstoken" ) ) ){
+                reply( exchange, "application/json", //
+                        "{\"exception\":\"moodle_exception\",\"message\":\"Invalid token\"}" );
+                return;
+            }
+            params.remove( "moodlewsrestformat" );
+            StringBuilder key = new StringBuilder( params.remove( "wsfunction" ) );
+            new TreeMap<>( params ).forEach( ( name, value ) -> key.append( ' ' ).append( name ).append( '=' )
+                    .append( value ) );
+            String json = functions.get( key.toString() );
+            reply( exchange, "application/json", json != null ? json : //
+                    "{\"exception\":\"invalid_parameter_exception\",\"message\":\"Unknown " + key + "\"}" );
+
+        }else if( pages.containsKey( path + ( query != null ? "?" + query : "" ) ) ){
+            reply( exchange, "text/html", pages.get( path + ( query != null ? "?" + query : "" ) ) );
+
+        }else{
+            reply( exchange, "application/pdf", path );
+        }
+    }//end handle
+
+
+    private static void reply( HttpExchange exchange, String type, String body ) throws IOException{
+        byte[] bytes = body.getBytes( StandardCharsets.UTF_8 );
+        exchange.getResponseHeaders().add( "Content-Type", type );
+        exchange.sendResponseHeaders( 200, bytes.length );
+        try( OutputStream out = exchange.getResponseBody() ){
+            out.write( bytes );
+        }
+    }//end reply
+
+
+    private static Map<String, String> parseQuery( String query ) throws IOException{
+        Map<String, String> params = new HashMap<>();
+        if( query == null ) return params;
+        for( String param : query.split( "&" ) ){
+            int eq = param.indexOf( '=' );
+            if( eq < 0 ) continue;
+            params.put( URLDecoder.decode( param.substring( 0, eq ), "UTF-8" ), //
+                    URLDecoder.decode( param.substring( eq + 1 ), "UTF-8" ) );
+        }//end for
+        return params;
+    }//end parseQuery
+}//end class
@@ -0,0 +1,100 @@
+package basic;
+
+import network.PartFile;
+import network.ResourceStream;
+import org.apache.http.HttpVersion;
+import org.apache.http.entity.ByteArrayEntity;
+import org.apache.http.message.BasicHttpResponse;
+import org.junit.Assert;
+import org.junit.Test;
+import utils.CybeUtils;
+import utils.ResourceWriter;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Random;
+
+public class UtilsTests{
+
+    @Test
+    public void normaliseUrlTest(){
+        String url = "https://cyberlearn.hes-so.ch/pluginfile.php/123/mod_resource/content/1/cours%201.pdf";
+
+        Assert.assertEquals( url, CybeUtils.normaliseUrl( url ) );
+        Assert.assertEquals( url, CybeUtils.normaliseUrl( "HTTPS://Cyberlearn.HES-SO.ch:443/pluginfile" +
+                ".php/123/mod_resource/content/1/cours%201.pdf#page=2" ) );
+        Assert.assertEquals( "http://cyberlearn.hes-so.ch/mod/resource/view.php?id=1&redirect=1",
+                CybeUtils.normaliseUrl( "http://cyberlearn.hes-so.ch:80/mod/resource/view.php?id=1&redirect=1" ) );
+
+        // invalid urls are left untouched
+        Assert.assertEquals( "not an url", CybeUtils.normaliseUrl( "not an url" ) );
+    }//end normaliseUrlTest
+
+
+    @Test
+    public void resourceWriterModesTest() throws IOException{
+        byte[] content = new byte[ 300 * 1024 + 17 ];
+        new Random( 42 ).nextBytes( content );
+        File file = File.createTempFile( "cybe-writer-test", "" );
+        file.deleteOnExit();
+
+        for( ResourceWriter.Mode mode : ResourceWriter.Mode.values() ){
+            // with the exact length, without length and with a wrong (too big) length
+            for( long length : new long[]{ content.length, -1, content.length * 2 } ){
+                long written = ResourceWriter.write( file, new ByteArrayInputStream( content ), length, mode );
+                Assert.assertEquals( content.length, written );
+                Assert.assertArrayEquals( content, Files.readAllBytes( file.toPath() ) );
+            }//end for
+        }//end for
+    }//end resourceWriterModesTest
+
+
+    @Test
+    public void resumePartFileTest() throws IOException{
+        byte[] content = new byte[ 100 * 1024 ];
+        new Random( 42 ).nextBytes( content );
+        int half = content.length / 2;
+        String url = "https://cyberlearn.hes-so.ch/pluginfile.php/1/cours.pdf";
+        File target = File.createTempFile( "cybe-part-test", ".pdf" );
+        target.deleteOnExit();
+
+        // an interrupted download: the first half is on disk
+        PartFile part = PartFile.of( target );
+        part.restart( url, "\"v1\"", null, content.length );
+        Files.write( part.getPartFile().toPath(), Arrays.copyOf( content, half ) );
+        part.checkpoint( half );
+        Assert.assertTrue( PartFile.of( target ).canResume() );
+
+        // the server sends the second half
+        BasicHttpResponse response = new BasicHttpResponse( HttpVersion.HTTP_1_1, 206, "Partial Content" );
+        response.setHeader( "Content-Range", String.format( "bytes %d-%d/%d", half, content.length - 1,
+                content.length ) );
+        response.setEntity( new ByteArrayEntity( Arrays.copyOfRange( content, half, content.length ) ) );
+        ResourceStream stream = new ResourceStream( response.getEntity().getContent(), response, url );
+
+        Assert.assertEquals( content.length, stream.getTotalLength() );
+        Assert.assertEquals( content.length - half, stream.saveTo( target ) );
+        Assert.assertArrayEquals( content, Files.readAllBytes( target.toPath() ) );
+        Assert.assertFalse( part.getPartFile().exists() );
+        Assert.assertFalse( part.getMetaFile().exists() );
+    }//end resumePartFileTest
+
+
+    @Test
+    public void writeAtomicallyTest() throws IOException{
+        File dir = Files.createTempDirectory( "cybe-atomic-test" ).toFile();
+        File file = new File( dir, ".cybe" );
+
+        CybeUtils.writeAtomically( file, "first".getBytes( "UTF-8" ) );
+        CybeUtils.writeAtomically( file, "second".getBytes( "UTF-8" ) );
+        Assert.assertEquals( "second", new String( Files.readAllBytes( file.toPath() ), "UTF-8" ) );
+        // no temporary file left behind
+        Assert.assertEquals( Arrays.asList( ".cybe" ), Arrays.asList( dir.list() ) );
+
+        file.delete();
+        dir.delete();
+    }//end writeAtomicallyTest
+}//end class
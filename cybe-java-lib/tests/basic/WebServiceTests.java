@@ -0,0 +1,110 @@
+package basic;
+
+import network.AuthContainer;
+import network.ConnectorConfig;
+import network.CybeConnector;
+import network.CybeParser;
+import network.WebServiceBackend;
+import org.apache.http.NameValuePair;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import props.PlatformLinks;
+
+import java.util.*;
+import java.util.concurrent.Future;
+
+public class WebServiceTests{
+
+    private static final String CONTENTS = "[{\"id\":10,\"name\":\"General\",\"modules\":[" +
+            "{\"id\":1,\"modname\":\"resource\",\"contents\":[{\"type\":\"file\",\"filename\":\"a.pdf\"," +
+            "\"fileurl\":\"%1$s/webservice/pluginfile.php/1/mod_resource/content/1/a.pdf?forcedownload=1\"," +
+            "\"filesize\":12,\"timemodified\":1400000000}]}," +
+            "{\"id\":2,\"modname\":\"label\"}]}," +
+            "{\"id\":11,\"name\":\"Week 1\",\"modules\":[" +
+            "{\"id\":3,\"modname\":\"folder\",\"contents\":[" +
+            "{\"type\":\"file\",\"filename\":\"b.pdf\",\"fileurl\":\"%1$s/webservice/pluginfile.php/3/b.pdf\"}," +
+            "{\"type\":\"file\",\"filename\":\"c.pdf\",\"fileurl\":\"%1$s/webservice/pluginfile.php/3/c.pdf\"}]}," +
+            "{\"id\":4,\"modname\":\"url\",\"contents\":[{\"type\":\"url\",\"fileurl\":\"http://example.com\"}]}]}]";
+
+    private MoodleStubServer stub;
+    private CybeConnector connector;
+    private CybeParser parser;
+
+
+    @Before
+    public void init() throws Exception{
+        stub = new MoodleStubServer();
+        String home = stub.getHomeUrl();
+        stub.addFunction( "core_course_get_contents courseid=2", String.format( CONTENTS, home ) );
+        stub.addFunction( "core_webservice_get_site_info", "{\"userid\":42,\"sitename\":\"stub\"}" );
+        stub.addFunction( "core_enrol_get_users_courses userid=42", //
+                "[{\"id\":2,\"fullname\":\"Algorithms\"},{\"id\":3,\"fullname\":\"Networks\"}]" );
+        // the html version of a course, for the fallback
+        stub.addPage( "/course/view.php?id=3", "<div id=\"region-main\"><a href=\"" + home + //
+                "/mod/resource/view.php?id=5\">d</a></div>" );
+        stub.addPage( "/mod/resource/view.php?id=5", "<div class=\"resourceworkaround\"><a href=\"" + home + //
+                "/pluginfile.php/5/d.pdf\">d</a></div>" );
+
+        PlatformLinks links = new PlatformLinks( home, "http://localhost", "stub" );
+        links.setWebService( null );
+        connector = new CybeConnector( links, new ConnectorConfig() );
+        parser = new CybeParser( connector );
+        parser.setWebService( new WebServiceBackend( connector, links, //
+                new AuthContainer.BasicAuthContainer( "user", "pass" ) ) );
+    }//end init
+
+
+    @After
+    public void cleanUp(){
+        connector.close();
+        stub.close();
+    }//end cleanUp
+
+
+    @Test
+    public void courseContentsTest() throws Exception{
+        List<String> names = Collections.synchronizedList( new ArrayList<>() );
+        List<Future<NameValuePair>> futures = parser.findCourseResources( stub.getHomeUrl() +
+                "/course/view.php?id=2", ( t, n, in ) -> names.add( n ) );
+        Map<String, String> results = parser.futuresToMap( futures, 10 );
+
+        Assert.assertEquals( new TreeSet<>( Arrays.asList( "a.pdf", "b.pdf", "c.pdf" ) ), results.keySet() );
+        Assert.assertEquals( 3, names.size() );
+        // token + course contents + 3 files, the course page is never requested
+        Assert.assertEquals( 5, stub.getRequests().size() );
+        Assert.assertTrue( stub.getRequests().stream().noneMatch( r -> r.startsWith( "/course/" ) ) );
+        // the token is only added to the requests
+        Assert.assertFalse( results.get( "a.pdf" ).contains( "token=" ) );
+        Assert.assertTrue( stub.getRequests().contains( "/webservice/pluginfile.php/1/mod_resource/content/1/a.pdf" +
+                "?forcedownload=1&token=" + MoodleStubServer.TOKEN ) );
+    }//end courseContentsTest
+
+
+    @Test
+    public void coursesTest() throws Exception{
+        Map<String, String> courses = parser.getListOfCourses();
+        Assert.assertEquals( 2, courses.size() );
+        Assert.assertEquals( stub.getHomeUrl() + "/course/view.php?id=2", courses.get( "Algorithms" ) );
+    }//end coursesTest
+
+
+    @Test
+    public void fallbackToHtmlTest() throws Exception{
+        // course 3 is unknown to the web service: its page is parsed instead
+        Map<String, String> results = parser.futuresToMap( parser.findCourseResources( stub.getHomeUrl() +
+                "/course/view.php?id=3", ( t, n, in ) -> { } ), 10 );
+        Assert.assertEquals( Collections.singleton( "d.pdf" ), results.keySet() );
+
+        // no token at all: html only
+        stub.setTokenEnabled( false );
+        parser.setWebService( new WebServiceBackend( connector, new PlatformLinks( stub.getHomeUrl(), "", "" ), //
+                new AuthContainer.BasicAuthContainer( "user", "pass" ) ) );
+        stub.getRequests().clear();
+        results = parser.futuresToMap( parser.findCourseResources( stub.getHomeUrl() + "/course/view.php?id=3", //
+                ( t, n, in ) -> { } ), 10 );
+        Assert.assertEquals( Collections.singleton( "d.pdf" ), results.keySet() );
+        Assert.assertEquals( "/login/token.php", stub.getRequests().get( 0 ) );
+    }//end fallbackToHtmlTest
+}//end class
@@ -6,6 +6,7 @@ import utils.LevenshteinDistance;
 import java.io.InputStream;
 import java.util.*;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 /**
  * Read the commands documentation from a json file and constructs a queriable object.
@@ -17,13 +18,15 @@ import java.util.stream.Collectors;
  *   "descr": "same as cybe init && cybe pull"
  * },
  * </pre>
- * Each command should at least have a name and a description. The args part can be empty.
+ * Each command should at least have a name and a description. The args part can be empty. The entries whose name
+ * starts with a dash document the options: they are listed apart from the commands.
  *
  * @author: Lucy Linder
  * @date: 27.06.2014
  */
 public class CmdDoc{
     private List<CmdDescription> commandsUsage;
+    private List<CmdDescription> optionsUsage;
     private static final String NEW_LINE = System.getProperty( "line.separator" );
 
 
@@ -34,20 +37,28 @@ public class CmdDoc{
      */
     public CmdDoc( InputStream stream ){
         CmdDescription[] descr = ( CmdDescription[] ) GsonUtils.getJsonFromFile( stream, new CmdDescription[ 0 ] );
-        commandsUsage = new ArrayList<>( Arrays.asList( descr ) );
+        commandsUsage = new ArrayList<>();
+        optionsUsage = new ArrayList<>();
+        for( CmdDescription d : descr ){
+            ( d.name.startsWith( "-" ) ? optionsUsage : commandsUsage ).add( d );
+        }//end for
     }
 
 
     /**
-     * Get a string with the detail of all available commands
+     * Get a string with the detail of all available commands, then of the options
      *
      * @return the string
      */
     public String man(){
-        return commandsUsage.stream()   //
+        String man = commandsUsage.stream()   //
                 .map( CmdDescription::fullDescription )   //
                 .collect( Collectors.joining( NEW_LINE + NEW_LINE ) );
+        if( optionsUsage.isEmpty() ) return man;
 
+        return man + NEW_LINE + NEW_LINE + "Options:" + NEW_LINE + NEW_LINE + optionsUsage.stream()   //
+                .map( CmdDescription::fullDescription )   //
+                .collect( Collectors.joining( NEW_LINE + NEW_LINE ) );
     }
 
 
@@ -57,20 +68,25 @@ public class CmdDoc{
      * @return the string
      */
     public String help(){
-        return "Available commands: " + commandsUsage.stream()   //
+        String help = "Available commands: " + commandsUsage.stream()   //
                 .map( CmdDescription::toString )   //
                 .collect( Collectors.joining( ", " ) );
+        if( optionsUsage.isEmpty() ) return help;
+
+        return help + NEW_LINE + "Options: " + optionsUsage.stream()   //
+                .map( d -> d.syntax().trim() )   //
+                .collect( Collectors.joining( ", " ) );
     }
 
 
     /**
-     * get the description of a command
+     * get the description of a command or an option
      *
-     * @param cmd the command name
+     * @param cmd the command name, or the option (e.g. -j)
      * @return the command description or null if the command does not exist/is not documented
      */
     public CmdDescription get( String cmd ){
-        Optional<CmdDescription> descr = commandsUsage.stream()  //
+        Optional<CmdDescription> descr = Stream.concat( commandsUsage.stream(), optionsUsage.stream() )  //
                 .filter( s -> s.name.equals( cmd ) )  //
                 .findFirst();
 
@@ -4,24 +4,41 @@ import cmdline.parsing.CliFlag;
 import cmdline.parsing.CliParser;
 import cmdline.parsing.CliStringOption;
 import gson.GsonUtils;
+import network.BlobStore;
+import network.ConnectorConfig;
 import network.CybeConnector;
+import network.CybeConnector.ResourceConsumer;
 import network.CybeParser;
-import org.apache.commons.io.FileUtils;
+import network.ExecutorStrategy;
+import network.Fingerprints;
+import network.PartFile;
+import network.ResolutionIndex;
+import network.ResourceStream;
+import network.ValidatorStore;
+import network.WebServiceBackend;
 import org.apache.commons.io.FilenameUtils;
-import org.apache.commons.io.filefilter.FileFilterUtils;
-import org.apache.commons.io.filefilter.TrueFileFilter;
 import org.apache.http.NameValuePair;
+import props.DirectoryRegistry;
 import props.GlobalConfig;
 import props.LocalConfig;
 import props.PlatformLinks;
+import utils.CybeFileFinder;
 import utils.CybeUtils;
+import utils.FileIdIndex;
+import utils.ResourceWriter;
 import utils.SuperSimpleLogger;
 
 import java.io.File;
 import java.io.IOException;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.function.Function;
+import java.util.function.Predicate;
 
 import static utils.SuperSimpleLogger.*;
 
@@ -33,7 +50,12 @@ public class Cybe implements AutoCloseable{
 
     private static final int EXIT_STATUS_ERROR = 1, EXIT_STATUS_OK = 0;
     private static final String LOCAL_CONF_NAME = ".cybe";
-    private static final int PULL_TIMEOUT_SEC = 15;  // max time to download one file
+    private static final int PULL_TIMEOUT_SEC = 600;  // max time to find and download one file
+    private static final int PULL_DEADLINE_SEC = 3600;  // max time to find and download all the files
+    private static final int QUIESCE_SEC = 5;  // max time given to the running tasks before saving on exit
+    private static final ResourceWriter.Mode WRITE_MODE = ResourceWriter.Mode.TRANSFER;
+    private static final File CACHE_DIR = new File( System.getProperty( "user.home" ), ".cybecache" );
+    private static final int RESCAN_PARALLELISM = 8; // directories read at the same time by rescan
 
     private static final List<String> supportedPlatforms = Arrays.asList( "cyberlearn.hes-so", "moodle.unil" );
     private static final List<String> defaultCtypes = Arrays.asList( "pdf", "text/plain", "zip", "doc" );
@@ -44,9 +66,17 @@ public class Cybe implements AutoCloseable{
     private LocalConfig localConfig;
     private boolean isLocalConfigLoaded;
 
-    private Collection<String> existingResources;
+    private Collection<String> existingResources; // names of the resources already there, listed on first use
+    private DirectoryRegistry registry; // the course directories, loaded on first use
+    private ConnectorConfig connectorConfig = ConnectorConfig.defaultConfig().setCacheDir( CACHE_DIR );
     private CybeConnector connector;
     private CybeParser parser;
+    private ExecutorStrategy executorStrategy = ExecutorStrategy.WORK_STEALING;
+    private boolean force; // crawl the courses even if they did not change
+    private int jobs = 1; // number of directories processed at once by forAll
+    private final AtomicInteger savedCount = new AtomicInteger(); // resources saved by the pulls
+    private boolean child; // created by forAllParallel for one directory
+    private BlobStore blobStore; // the resources shared by the course directories, null if not used (see setDedup)
     private CmdDoc doc;
     private SuperSimpleLogger logger =  // debug, info, warn, error
             SuperSimpleLogger.getInstance( SILENT_OPT, SYSOUT_OPT, SYSOUT_OPT, SYSERR_OPT );
@@ -101,6 +131,22 @@ public class Cybe implements AutoCloseable{
         CliFlag interactiveFlag = new CliFlag();
         parser.registerOption( "-i", interactiveFlag ); // interactive
 
+        CliFlag noCacheFlag = new CliFlag(); // don't use the pages cache
+        parser.registerOption( "--no-cache", noCacheFlag );
+
+        CliFlag forceFlag = new CliFlag(); // crawl the unchanged courses too
+        parser.registerOption( "--force", forceFlag );
+
+        // how to run the resource finders: work-stealing, fixed or thread-per-task
+        CliStringOption executorOption = new CliStringOption( null );
+        parser.registerOption( "--executor", executorOption );
+
+        CliFlag dedupFlag = new CliFlag(); // link the files with the same content to the blob store
+        parser.registerOption( "--dedup", dedupFlag );
+
+        CliStringOption jobsOption = new CliStringOption( "1" ); // directories processed in parallel with --all
+        parser.registerOption( "-j", jobsOption );
+
         CliFlag updateAllOption = new CliFlag();  // apply to all
         parser.registerOption( "--all", updateAllOption );
         parser.registerOption( "-a", updateAllOption );
@@ -120,6 +166,21 @@ public class Cybe implements AutoCloseable{
         int exitStatus = EXIT_STATUS_OK;
         try( Cybe cybe = new Cybe( logger ) ){
             cybe.setUserDir( userDir.getValue() ); // update the working directory
+            if( noCacheFlag.getValue() ) cybe.getConnectorConfig().setCacheDir( null );
+            cybe.setForce( forceFlag.getValue() );
+            cybe.setDedup( dedupFlag.getValue() );
+            if( executorOption.getValue() != null ){
+                try{
+                    cybe.setExecutorStrategy( ExecutorStrategy.fromString( executorOption.getValue() ) );
+                }catch( IllegalArgumentException e ){
+                    printUsageAndQuit( "Unknown executor " + executorOption.getValue(), EXIT_STATUS_ERROR );
+                }
+            }
+            try{
+                cybe.setJobs( Integer.parseInt( jobsOption.getValue() ) );
+            }catch( IllegalArgumentException e ){
+                printUsageAndQuit( "Invalid number of jobs " + jobsOption.getValue(), EXIT_STATUS_ERROR );
+            }
 
             // get the command
             if( updateAllOption.getValue() ){
@@ -179,6 +240,27 @@ public class Cybe implements AutoCloseable{
         this.logger = logger;
     }
 
+
+    /*
+     * an instance for one directory of forAll: it shares the connection and the settings of the parent, but has its
+     * own local config. It is not closed by a shutdown hook: see forAllParallel
+     */
+    private Cybe( Cybe parent, String userDir ){
+        this.userDir = userDir;
+        this.doc = parent.doc;
+        this.logger = parent.logger;
+        this.connectorConfig = parent.connectorConfig;
+        this.connector = parent.connector;
+        this.parser = parent.parser;
+        this.executorStrategy = parent.executorStrategy;
+        this.force = parent.force;
+        this.blobStore = parent.blobStore;
+        this.child = true;
+
+        fillCommandMaps();
+        loadLocalConfig();
+    }
+
     // ----------------------------------------------------
 
 
@@ -193,15 +275,17 @@ public class Cybe implements AutoCloseable{
 
 
     /*
-     * execute the given command for all .cybe folders found under the current directory
+     * execute the given command for all .cybe folders under the current directory (see findCourseDirectories)
      */
     public void forAll( String command, List<String> params ){
-        Collection<File> files = FileUtils.listFiles( FileUtils.getFile( userDir ),
-                FileFilterUtils.nameFileFilter( LOCAL_CONF_NAME ), TrueFileFilter.INSTANCE );
-
+        List<String> dirs = findCourseDirectories();
+        if( jobs > 1 && !command.equals( "init" ) ){ // init is interactive
+            forAllParallel( dirs, command, params );
+            return;
+        }
 
-        lastCmdret = !files.stream().anyMatch( confFile -> { // stop if an error occurs
-            userDir = confFile.getParent();  //TODO: the next line is not really clean...
+        lastCmdret = !dirs.stream().anyMatch( dir -> { // stop if an error occurs
+            userDir = dir;  //TODO: the next line is not really clean...
             isLocalConfigLoaded = false; // reinit, so the userDir change is taken into account
             logger.info.printf( "%n-------------------------------%n" );
             logger.info.printf( "Changed working directory to %s%n", userDir );
@@ -232,6 +316,90 @@ public class Cybe implements AutoCloseable{
 
     }//end updateAll
 
+
+    /*
+     * execute the given command for all the .cybe folders, jobs folders at a time. The folders share the connection,
+     * and the parser alternates between their tasks (see CybeParser#setCourseWindow), so that a big course does not
+     * delay the others. An error does not stop the other folders: a summary is printed at the end
+     */
+    private void forAllParallel( List<String> dirs, String command, List<String> params ){
+        // one connection for all
+        if( connectionfullHandlers.containsKey( command ) ){
+            if( !createConnectorAndParser() ) printUsageAndQuit( "Could not connect...", EXIT_STATUS_ERROR );
+            parser.setCourseWindow( Math.max( 1, connectorConfig.getMaxToTarget() / jobs ) );
+        }
+
+        logger.info.printf( "Processing %d directories, %d at a time%n", dirs.size(), jobs );
+        ExecutorService executor = Executors.newFixedThreadPool( jobs, r -> {
+            Thread thread = new Thread( r, "cybe-dir" );
+            thread.setDaemon( true );
+            return thread;
+        } );
+
+        Map<String, Future<Integer>> results = new LinkedHashMap<>();
+        for( String dir : dirs ){
+            results.put( dir, executor.submit( () -> {
+                Cybe cybe = new Cybe( this, dir );
+                if( !cybe.loadLocalConfig() ){
+                    logger.debug.printf( "Could not load local config (%s)%n", cybe.getLocalConfigFilePath() );
+                    return null; // skipped
+                }
+                logger.info.printf( "Processing %s%n", dir );
+                boolean ok = cybe.execute( command, params );
+                cybe.close(); // saves the local config
+                return ok ? cybe.savedCount.get() : -1;
+            } ) );
+        }//end for
+        executor.shutdown();
+
+        // summary
+        int failed = 0, skipped = 0, saved = 0;
+        logger.info.printf( "%n-------------------------------%n" );
+        for( Map.Entry<String, Future<Integer>> result : results.entrySet() ){
+            Integer count;
+            try{
+                count = result.getValue().get();
+            }catch( ExecutionException e ){
+                logger.error.printf( "Exception while processing %s: %s%n", result.getKey(), e.getCause() );
+                count = -1;
+            }catch( InterruptedException e ){
+                Thread.currentThread().interrupt();
+                count = -1;
+            }
+
+            if( count == null ){
+                skipped++;
+                logger.info.printf( "  %-8s %s%n", "skipped", result.getKey() );
+            }else if( count < 0 ){
+                failed++;
+                logger.info.printf( "  %-8s %s%n", "FAILED", result.getKey() );
+            }else{
+                saved += count;
+                logger.info.printf( "  %-8s %s (%d new files)%n", "ok", result.getKey(), count );
+            }
+        }//end for
+        logger.info.printf( "%d directories: %d ok, %d failed, %d skipped, %d new files%n", results.size(), //
+                results.size() - failed - skipped, failed, skipped, saved );
+
+        lastCmdret = failed == 0;
+        localConfig = null; // don't save the localConfig in the shutdown hook
+    }//end forAllParallel
+
+
+    /*
+     * the course directories under userDir, from the registry. The first time, the tree is scanned to fill it
+     */
+    private List<String> findCourseDirectories(){
+        DirectoryRegistry registry = getRegistry();
+        if( !registry.exists() ){
+            logger.info.printf( "No registry of the course directories yet, looking for them...%n" );
+            scan( userDir );
+        }
+        List<String> dirs = registry.getDirectories( userDir, LOCAL_CONF_NAME ); // without the stale ones
+        registry.save();
+        return dirs;
+    }//end findCourseDirectories
+
     //----------------------------------------------------
 
 
@@ -240,6 +408,7 @@ public class Cybe implements AutoCloseable{
         alwaysValidHandlers.put( "init-global", Cybe::initGlobal );
         alwaysValidHandlers.put( "help", args -> helpOrMan( args, false ) );
         alwaysValidHandlers.put( "man", args -> helpOrMan( args, true ) );
+        alwaysValidHandlers.put( "rescan", this::rescan );
 
         connectionlessHandlers.put( "dump", p -> {
             System.out.println( GsonUtils.toJson( localConfig ).replaceAll( "\\\"|\\{|\\}|\\[|\\]|,", "" ) );
@@ -272,10 +441,18 @@ public class Cybe implements AutoCloseable{
 
     @Override
     public void close() throws IOException{
+        // the tasks still running (e.g. after a ctrl-c) modify the local config: let them finish first
+        if( parser != null && !child && !parser.shutdown( QUIESCE_SEC ) ){
+            logger.warn.printf( "Some downloads were interrupted.%n" );
+        }
         if( localConfig != null ){
             localConfig.close();
         }
-        if( connector != null ) connector.close();
+        if( connector != null && !child ){ // a child uses the connector of its parent
+            if( connector.getValidatorStore() != null ) connector.getValidatorStore().save();
+            connector.close();
+        }
+        if( blobStore != null && !child ) blobStore.save();
     }
 
     //----------------------------------------------------
@@ -412,6 +589,9 @@ public class Cybe implements AutoCloseable{
             localConfig.setCourseUrl( courses.get( selectedCourse ) );
             localConfig.save();
             isLocalConfigLoaded = true;
+            // so that --all finds it
+            getRegistry().add( userDir );
+            getRegistry().save();
 
         }catch( Exception e ){
             logger.error.printf( "error while init.%n" );
@@ -428,26 +608,62 @@ public class Cybe implements AutoCloseable{
      */
     private boolean pull( List<String> args ){
         try{
+            // resume the downloads interrupted during the last pull
+            PartFile.findAll( new File( userDir ) ).forEach( connector::addPartFile );
+            ResolutionIndex index = loadResolutionIndex();
+            // the sections unchanged since the last pull are skipped, unless a file downloaded since then was deleted
+            localConfig.retainFileRefs( getExistingResources( userDir, localConfig::getFileFromId ).keySet() );
+            Fingerprints fingerprints = new Fingerprints( force ? null : localConfig.getFingerprints() );
+            // the files saved during this pull (normalised path): two links leading to the same name are downloaded
+            // only once
+            Set<String> claims = ConcurrentHashMap.newKeySet();
+            Collection<String> existingResources = existingResources();
+
             List<Future<NameValuePair>> futures = parser.findCourseResources( //
-                    localConfig.getCourseUrl(), ( ctype, name, in ) -> {
-                try{
-                    logger.debug.printf( "=== %s [%s]%n", name, ctype );
-                    if( isFileAccepted( ctype, name ) && !existingResources.contains( name ) ){
-                        existingResources.add( name ); // mark this file as handled
+                    localConfig.getCourseUrl(), new ResourceConsumer(){
+                @Override
+                public void accept( String ctype, String name, ResourceStream in ){
+                    try{
+                        logger.debug.printf( "=== %s [%s]%n", name, ctype );
                         String path = CybeUtils.concatPath( userDir, name );
-                        CybeUtils.saveResource( path, in ); // save the resource
-                        logger.info.printf( "  --> SAVING %s (thread: %s)%n", name, Thread.currentThread().getId() );
-                        // add its unique id to the inodesToNameMapping
-                        localConfig.putFileRef( CybeUtils.getUniqueFileId( path ), name );
+                        String claim = new File( path ).toPath().toAbsolutePath().normalize().toString();
+                        if( isFileAccepted( ctype, name ) && !existingResources.contains( name ) && //
+                                claims.add( claim ) ){
+                            try{
+                                save( in, path );
+                            }catch( Exception e ){
+                                claims.remove( claim ); // another link to the same file can try again
+                                throw e;
+                            }
+                            existingResources.add( name ); // mark this file as handled
+                            savedCount.incrementAndGet();
+                            // add its unique id to the inodesToNameMapping
+                            localConfig.putFileRef( CybeUtils.getUniqueFileId( path ), name );
+                            localConfig.requestSave(); // batched with the other files
+                        }else{
+                            in.abort(); // rejected or already there: don't download the content
+                        }
+
+                    }catch( Exception e ){
+                        fingerprints.setIncomplete(); // try again next time
+                        logger.warn.printf( "Error while downloading resource %s%n", name );
+                        logger.error.printf( "Exception inside pull handler : %s%s%n", e, e.getMessage() );
                     }
+                }
+
 
-                }catch( Exception e ){
-                    logger.warn.printf( "Error while downloading resource %s%n", name );
-                    logger.error.printf( "Exception inside pull handler : %s%s%n", e, e.getMessage() );
+                @Override
+                public boolean notModified( String name ){
+                    // unchanged on the server: nothing to do, unless the local copy is missing
+                    logger.debug.printf( "=== %s [not modified]%n", name );
+                    return existingResources.contains( name );
                 }
-            }, ( url, e ) -> System.err.println( url + ": " + e.getStatusLine() ) );
+            }, ( url, e ) -> System.err.println( url + ": " + e.getStatusLine() ), false, index, fingerprints );
 
-            parser.futuresToMap( futures, PULL_TIMEOUT_SEC );
+            parser.futuresToMap( futures, PULL_DEADLINE_SEC );
+            index.save();
+            if( !fingerprints.hasChanges() ) logger.info.printf( "No change since the last pull.%n" );
+            if( fingerprints.isComplete() ) localConfig.setFingerprints( fingerprints.getCurrent() );
             logger.debug.printf( "FUTURES GATHERED%n" );
 
         }catch( Exception e ){
@@ -460,32 +676,76 @@ public class Cybe implements AutoCloseable{
     }//end pull
 
 
+    /*
+     * save a resource. With the blob store, a resource whose validators match a known content is linked to it without
+     * being downloaded, and a downloaded one is added to the store. A course never gets two links to the same blob:
+     * the files of a course are told apart by their inode
+     */
+    private void save( ResourceStream in, String path ) throws IOException{
+        File target = new File( path );
+        BlobStore blobs = blobStore;
+        Predicate<File> linkable = blob -> //
+                localConfig.getFileFromId( CybeUtils.getUniqueFileId( blob.getPath() ) ) == null;
+
+        String hash = blobs == null ? null : blobs.find( in );
+        if( hash != null && linkable.test( blobs.getBlob( hash ) ) && blobs.link( hash, target ) ){
+            in.abort(); // the content is already there
+            in.markSaved();
+            logger.info.printf( "  --> LINKING %s (thread: %s)%n", target.getName(),
+                    Thread.currentThread().getId() );
+            return;
+        }
+
+        in.saveTo( target, WRITE_MODE );
+        logger.info.printf( "  --> SAVING %s (thread: %s)%n", target.getName(), Thread.currentThread().getId() );
+        if( blobs != null ) blobs.add( target, in, linkable );
+    }//end save
+
+
     /*
      * remove all the inode-to-names mapping from the config file and
      * reconstruct it...
      */
     private boolean resyncInodesToNameMapping( List<String> args ){
         try{
+            Collection<String> existingResources = existingResources(); // before clearing the names
             localConfig.removeAllFileRefs(); // clear the list totally
+            ResolutionIndex index = loadResolutionIndex();
 
             List<Future<NameValuePair>> futures = parser.findCourseResources( //
-                    localConfig.getCourseUrl(), ( ctype, name, in ) -> {
-                try{
-                    if( existingResources.contains( name ) ){
-                        String path = CybeUtils.concatPath( userDir, name );
-                        String id = CybeUtils.getUniqueFileId( path );
-                        // add its unique id to the inodesToNameMapping
-                        localConfig.putFileRef( id, name );
-                        logger.info.printf( "--> ADDED ref %s [%s]%n", name, id );
-                    }
+                    localConfig.getCourseUrl(), new ResourceConsumer(){
+                @Override
+                public void accept( String ctype, String name, ResourceStream in ){
+                    resync( name );
+                }
+
+
+                @Override
+                public boolean notModified( String name ){
+                    resync( name ); // we only need the name
+                    return true;
+                }
+
 
-                }catch( Exception e ){
-                    logger.warn.printf( "Error while getting resource %s%n", name );
-                    logger.error.printf( "Exception inside resync handler : %s%s%n", e, e.getMessage() );
+                private void resync( String name ){
+                    try{
+                        if( existingResources.contains( name ) ){
+                            String path = CybeUtils.concatPath( userDir, name );
+                            String id = CybeUtils.getUniqueFileId( path );
+                            // add its unique id to the inodesToNameMapping
+                            localConfig.putFileRef( id, name );
+                            logger.info.printf( "--> ADDED ref %s [%s]%n", name, id );
+                        }
+
+                    }catch( Exception e ){
+                        logger.warn.printf( "Error while getting resource %s%n", name );
+                        logger.error.printf( "Exception inside resync handler : %s%s%n", e, e.getMessage() );
+                    }
                 }
-            }, ( url, e ) -> System.err.println( url + ": " + e.getStatusLine() ) );
+            }, ( url, e ) -> System.err.println( url + ": " + e.getStatusLine() ), true, index ); // names only
 
-            parser.futuresToMap( futures, PULL_TIMEOUT_SEC );
+            parser.futuresToMap( futures, PULL_DEADLINE_SEC );
+            index.save();
             logger.debug.printf( "Resync done.%n" );
 
         }catch( Exception e ){
@@ -498,6 +758,36 @@ public class Cybe implements AutoCloseable{
     }//end pull
 
 
+    /*
+     * look for the course directories under the given directory (or the current one) and register them
+     */
+    private boolean rescan( List<String> args ){
+        String root = args.isEmpty() ? userDir : args.get( 0 );
+        if( !new File( root ).isDirectory() ){
+            logger.error.printf( "%s is not a directory.%n", root );
+            return false;
+        }
+        scan( root );
+        logger.info.printf( "%d course directories registered under %s.%n", //
+                getRegistry().getDirectories( root, LOCAL_CONF_NAME ).size(), root );
+        return getRegistry().save() || !getRegistry().isModified();
+    }//end rescan
+
+
+    /*
+     * walk the tree to find the .cybe files and add their directories to the registry (the slow way)
+     */
+    private void scan( String root ){
+        long start = System.currentTimeMillis();
+        Set<String> found = ConcurrentHashMap.newKeySet();
+        new CybeFileFinder().findParallel( root, LOCAL_CONF_NAME, getRegistry().getSkipList(), RESCAN_PARALLELISM,
+                path -> found.add( path.getParent().toString() ) );
+        long added = found.stream().filter( getRegistry()::add ).count();
+        logger.info.printf( "Found %d course directories (%d new) in %d ms.%n", found.size(), added, //
+                System.currentTimeMillis() - start );
+    }//end scan
+
+
     /*
      * display help: man = commands + description,help = commands only
      */
@@ -526,6 +816,28 @@ public class Cybe implements AutoCloseable{
      * ****************************************************************/
 
 
+    /*
+     * load the index of the course links (next to the .cybe), which spares the resolution of the known links
+     */
+    private ResolutionIndex loadResolutionIndex(){
+        return ResolutionIndex.loadInstance( CybeUtils.concatPath( userDir, ResolutionIndex.DEFAULT_FILENAME ) );
+    }
+
+
+    /*
+     * the names of the resources already in the directory. They are listed on first use, since only the commands
+     * downloading something need them. The collection is concurrent: the consumers of a pull update it
+     */
+    private synchronized Collection<String> existingResources(){
+        if( existingResources == null ){
+            Collection<String> names = ConcurrentHashMap.newKeySet();
+            names.addAll( getExistingResources( userDir, localConfig::getFileFromId ).values() );
+            existingResources = names;
+        }
+        return existingResources;
+    }//end existingResources
+
+
     /*
      * look for the .cybe in the current directory
      */
@@ -533,12 +845,10 @@ public class Cybe implements AutoCloseable{
         if( isLocalConfigLoaded ) return true;
         File configFile = new File( getLocalConfigFilePath() );
         if( configFile.exists() ){
-            localConfig = ( LocalConfig ) GsonUtils.getJsonFromFile( configFile, new LocalConfig() );
+            localConfig = LocalConfig.loadInstance( configFile.getPath() ); // with the changes of its journal
             if( localConfig != null && !CybeUtils.isNullOrEmpty( localConfig.getCourseUrl() ) ){
                 isLocalConfigLoaded = true;
-                localConfig.setFilepath( configFile.getPath() ); // where to save the config
-                existingResources = new HashSet<>( //
-                        getExistingResources( userDir, localConfig::getFileFromId ).values() );
+                existingResources = null; // see existingResources()
             }
         }
         isLocalConfigLoaded = localConfig != null &&  //
@@ -548,6 +858,12 @@ public class Cybe implements AutoCloseable{
     }
 
 
+    private DirectoryRegistry getRegistry(){
+        if( registry == null ) registry = DirectoryRegistry.getInstance();
+        return registry;
+    }
+
+
     private boolean localConfigFileExists(){
         return new File( getLocalConfigFilePath() ).exists();
     }
@@ -571,6 +887,48 @@ public class Cybe implements AutoCloseable{
         this.userDir = userDir;
     }
 
+
+    /**
+     * @param jobs the number of directories processed at the same time by {@link #forAll(String, java.util.List)}.
+     *             With more than one, the directories share the connection and an error does not stop the others.
+     */
+    public void setJobs( int jobs ){
+        if( jobs < 1 ) throw new IllegalArgumentException( "jobs must be positive" );
+        this.jobs = jobs;
+    }
+
+
+    /**
+     * @param dedup true to keep the resources in a store shared by the course directories ({@link
+     *              BlobStore#DEFAULT_DIR}): the files with the same content are hard links to the same blob, and a
+     *              content already in the store is not downloaded again.
+     */
+    public void setDedup( boolean dedup ){
+        if( blobStore != null ) blobStore.save();
+        this.blobStore = dedup ? BlobStore.loadInstance( BlobStore.DEFAULT_DIR ) : null;
+    }
+
+
+    /** @param force true to crawl all the pages of the courses, even if they did not change since the last pull */
+    public void setForce( boolean force ){
+        this.force = force;
+    }
+
+
+    /**
+     * @param executorStrategy how the parser runs the resource finders. Taken into account until the first
+     *                         connection.
+     */
+    public void setExecutorStrategy( ExecutorStrategy executorStrategy ){
+        this.executorStrategy = executorStrategy;
+    }
+
+
+    /** @return the settings of the connector. Changes are taken into account until the first connection. */
+    public ConnectorConfig getConnectorConfig(){
+        return connectorConfig;
+    }
+
     /* *****************************************************************
      * private utils
      * ****************************************************************/
@@ -587,19 +945,17 @@ public class Cybe implements AutoCloseable{
 
 
     /*
-     * get the list of files in the current folder
+     * get the list of files in the current folder: a map (file id, original name). The ids are cached, see
+     * FileIdIndex
      */
     public static Map<String, String> getExistingResources( String directory, Function<String,
             String> inodeToNameResolver ){
-        File rootDir = new File( directory );
         Map<String, String> results = new HashMap<>();
-        if( !rootDir.isDirectory() ) return results;
-
-        for( File file : rootDir.listFiles( f -> !f.isDirectory() ) ){
-            String id = CybeUtils.getUniqueFileId( file.getAbsolutePath() );
+        // unfinished downloads (.part files) are not resources yet
+        FileIdIndex.list( directory, f -> !PartFile.isPartFile( f.getName() ) ).forEach( ( name, id ) -> {
             String resolvedName = inodeToNameResolver.apply( id );
-            results.put( id, resolvedName != null ? resolvedName : file.getName() );
-        }//end for
+            results.put( id, resolvedName != null ? resolvedName : name );
+        } );
         return results;
     }//end getExistingResources
 
@@ -631,8 +987,17 @@ public class Cybe implements AutoCloseable{
 
         try{
             // TODO
-            connector = new CybeConnector( PlatformLinks.getInstance( platform ) );
+            PlatformLinks links = PlatformLinks.getInstance( platform );
+            connector = new CybeConnector( links, connectorConfig );
+            connector.setValidatorStore( ValidatorStore.loadInstance( ValidatorStore.DEFAULT_FILEPATH ) );
             parser = new CybeParser( connector, logger );
+            parser.setTaskTimeout( PULL_TIMEOUT_SEC );
+            parser.setExecutorStrategy( executorStrategy );
+            if( links.usesWebService() ){
+                WebServiceBackend webService = new WebServiceBackend( connector, links, globalConfig );
+                webService.setLogger( logger );
+                parser.setWebService( webService );
+            }
             connector.connect( globalConfig );
         }catch( Exception e ){
             logger.error.printf( "error while creating connector and parser.%n" );